@@ -0,0 +1,33 @@
+#! /bin/bash
+# Runs EndpointLoadBenchmark on two revisions and prints their results one after the other.
+# Usage: ./compare_endpoint_benchmark.sh [base] [head]
+# base defaults to the parent of head, head defaults to HEAD.
+# The benchmark from the working tree, and its fixture, are run on both revisions, so older ones don't need to contain them.
+# Requires a running Docker daemon, for the PostgreSQL Dev Service.
+set -e
+
+HEAD_REV=$(git rev-parse --short "${2:-HEAD}")
+BASE_REV=$(git rev-parse --short "${1:-$HEAD_REV^}")
+BENCHMARK_FILES="src/test/java/com/redhat/devtools/stats/endpoints/EndpointLoadBenchmark.java
+src/test/java/com/redhat/devtools/stats/models/InstallHistory.java"
+WORK_DIR=$(mktemp -d)
+trap 'for rev in "$BASE_REV" "$HEAD_REV"; do git worktree remove --force "$WORK_DIR/$rev" 2>/dev/null; done; rm -rf "$WORK_DIR"' EXIT
+
+for REV in "$BASE_REV" "$HEAD_REV"
+do
+  echo "Running EndpointLoadBenchmark on $REV"
+  git worktree add --detach "$WORK_DIR/$REV" "$REV" > /dev/null
+  for FILE in $BENCHMARK_FILES
+  do
+    cp "$FILE" "$WORK_DIR/$REV/$FILE"
+  done
+  (cd "$WORK_DIR/$REV" && ./mvnw -B -q test -Pbenchmark -Dtest=EndpointLoadBenchmark -Dsurefire.failIfNoSpecifiedTests=false) \
+    > "$WORK_DIR/$REV.log" 2>&1 || { tail -n 50 "$WORK_DIR/$REV.log"; exit 1; }
+done
+
+for REV in "$BASE_REV" "$HEAD_REV"
+do
+  echo
+  echo "== $REV: $(git log -1 --format=%s "$REV")"
+  grep -o '\(cold\|warm\) burst of .*' "$WORK_DIR/$REV.log"
+done
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.endpoints;
+
+import jakarta.ws.rs.core.EntityTag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A fully rendered response body, plain and gzipped, along with its validators.
+ *
+ * @param lastModified the time of the latest snapshot the body was rendered from, or null if there's none
+ * @param variant distinguishes the different representations of a resource
+ */
+record CachedResponse(String mediaType, byte[] body, byte[] gzippedBody, Map<String, String> headers,
+                      Instant lastModified, String variant) {
+
+    static CachedResponse of(String mediaType, byte[] body, Map<String, String> headers, Instant lastModified, String variant) {
+        return new CachedResponse(mediaType, body, gzip(body), headers, lastModified, variant);
+    }
+
+    /**
+     * Renders the given body, or returns null if it's larger than <code>maxSize</code> bytes, as soon as it is
+     */
+    static CachedResponse render(ResponseBody body, long maxSize) {
+        CappedOutputStream output = new CappedOutputStream(maxSize);
+        try {
+            body.output().write(output);
+        } catch (IOException e) {
+            if (isTooLarge(e)) {
+                return null;
+            }
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            if (isTooLarge(e)) {
+                return null;
+            }
+            throw e;
+        }
+        return of(body.mediaType(), output.toByteArray(), body.headers(), body.lastModified(), body.variant());
+    }
+
+    private static boolean isTooLarge(Exception e) {
+        // Possibly wrapped on its way out of the writers and transactions
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BodyTooLargeException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the strong entity tag of the plain or gzipped body, or null if there's no snapshot to derive it from
+     */
+    EntityTag etag(boolean gzipped) {
+        return etag(lastModified, variant, gzipped);
+    }
+
+    /**
+     * Returns the strong entity tag of a representation, so it can be compared before the body is even read,
+     * or null if there's no snapshot to derive it from
+     */
+    static EntityTag etag(Instant lastModified, String variant, boolean gzipped) {
+        if (lastModified == null) {
+            return null;
+        }
+        String tag = Long.toHexString(lastModified.toEpochMilli()) + "-" + Integer.toHexString(variant.hashCode());
+        return new EntityTag(gzipped ? tag + "-gzip" : tag);
+    }
+
+    int size() {
+        return body.length + gzippedBody.length;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream output = new GZIPOutputStream(gzipped)) {
+            output.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return gzipped.toByteArray();
+    }
+
+    private static class CappedOutputStream extends ByteArrayOutputStream {
+        private final long maxSize;
+
+        CappedOutputStream(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            ensureCapacity(1);
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            super.write(b, off, len);
+        }
+
+        private void ensureCapacity(int len) {
+            if (count + len > maxSize) {
+                throw new BodyTooLargeException();
+            }
+        }
+    }
+
+    private static class BodyTooLargeException extends RuntimeException {
+        BodyTooLargeException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.endpoints;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.redhat.devtools.stats.models.ExtensionInstall.InstallDto;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Writes installs in a columnar form: for each version, an array of epoch millis and one parallel array per stat,
+ * <code>{"_id": version, "time": [...], "installs": [...]}</code>.
+ * Values are buffered in primitive arrays, one version at a time, rather than in per-row maps.
+ * Installs can also be grouped by something else than their version, e.g. by extension.
+ */
+class ColumnarStatsWriter {
+
+    private static final String TIME = "time";
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final JsonGenerator generator;
+    private final String[] columns;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+    private final long[][] values;
+    private int size;
+
+    ColumnarStatsWriter(JsonGenerator generator, List<String> columns) {
+        this.generator = generator;
+        this.columns = columns.stream().filter(col -> !TIME.equals(col)).toArray(String[]::new);
+        this.values = new long[this.columns.length][INITIAL_CAPACITY];
+    }
+
+    void write(Stream<InstallDto> data) throws IOException {
+        write(data, InstallDto::version, Function.identity());
+    }
+
+    /**
+     * Writes the installs, in consecutive groups of rows sharing the same <code>_id</code>
+     */
+    <T> void write(Stream<T> data, Function<T, String> groupId, Function<T, InstallDto> install) throws IOException {
+        generator.writeStartArray();
+        String group = null;
+        for (Iterator<T> it = data.iterator(); it.hasNext(); ) {
+            T row = it.next();
+            String rowGroup = groupId.apply(row);
+            if (size > 0 && !Objects.equals(group, rowGroup)) {
+                writeGroup(group);
+            }
+            group = rowGroup;
+            add(install.apply(row));
+        }
+        if (size > 0) {
+            writeGroup(group);
+        }
+        generator.writeEndArray();
+    }
+
+    private void add(InstallDto ei) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            for (int c = 0; c < values.length; c++) {
+                values[c] = Arrays.copyOf(values[c], capacity);
+            }
+        }
+        times[size] = ei.time().toEpochMilli();
+        for (int c = 0; c < columns.length; c++) {
+            values[c][size] = getStat(columns[c], ei);
+        }
+        size++;
+    }
+
+    private void writeGroup(String group) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("_id", group);
+        generator.writeFieldName(TIME);
+        generator.writeArray(times, 0, size);
+        for (int c = 0; c < columns.length; c++) {
+            generator.writeFieldName(columns[c]);
+            generator.writeArray(values[c], 0, size);
+        }
+        generator.writeEndObject();
+        size = 0;
+    }
+
+    static long getStat(String col, InstallDto ei) {
+        return switch (col) {
+            case "delta" -> ei.delta();
+            case "installs" -> ei.installs();
+            case "updates" -> ei.updates();
+            case "total_installed" -> ei.total_installs();
+            case "onpremDownloads" -> ei.onpremDownloads();
+            default -> throw new IllegalStateException("Unexpected value: " + col);
+        };
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.endpoints;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * The request headers a cached response is negotiated and validated against, read up front, as the request context
+ * isn't available anymore once the response has been rendered on another thread.
+ *
+ * @param ifNoneMatch the <code>If-None-Match</code> header, or null
+ * @param ifModifiedSince the <code>If-Modified-Since</code> header, or null if it's missing or invalid
+ */
+record ConditionalRequest(boolean acceptsGzip, String ifNoneMatch, Instant ifModifiedSince) {
+
+    static ConditionalRequest of(HttpHeaders headers) {
+        String acceptEncoding = headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        return new ConditionalRequest(acceptEncoding != null && acceptEncoding.contains("gzip"),
+                headers.getHeaderString(HttpHeaders.IF_NONE_MATCH),
+                parseDate(headers.getHeaderString(HttpHeaders.IF_MODIFIED_SINCE)));
+    }
+
+    /**
+     * Evaluates the preconditions of a GET: If-None-Match, with a weak comparison, takes precedence over
+     * If-Modified-Since.
+     */
+    boolean notModified(EntityTag etag, Instant lastModified) {
+        if (ifNoneMatch != null) {
+            return Arrays.stream(ifNoneMatch.split(","))
+                    .map(String::trim)
+                    .anyMatch(tag -> "*".equals(tag) || opaqueTag(tag).equals(etag.getValue()));
+        }
+        // HTTP dates have a 1 second precision
+        return ifModifiedSince != null && lastModified.getEpochSecond() <= ifModifiedSince.getEpochSecond();
+    }
+
+    private static String opaqueTag(String tag) {
+        String opaque = tag.startsWith("W/") ? tag.substring(2) : tag;
+        return opaque.length() >= 2 && opaque.startsWith("\"") && opaque.endsWith("\"")
+                ? opaque.substring(1, opaque.length() - 1)
+                : opaque;
+    }
+
+    private static Instant parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
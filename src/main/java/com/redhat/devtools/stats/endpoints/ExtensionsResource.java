@@ -15,25 +15,49 @@
  */
 package com.redhat.devtools.stats.endpoints;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redhat.devtools.stats.models.Extension;
 import com.redhat.devtools.stats.models.ExtensionInstall;
 import com.redhat.devtools.stats.models.Extension.ExtensionDto;
+import com.redhat.devtools.stats.models.ExtensionInstall.ExtensionInstallDto;
+import com.redhat.devtools.stats.models.ExtensionInstall.InstallDto;
+import com.redhat.devtools.stats.models.ExtensionInstall.Resolution;
+import com.redhat.devtools.stats.models.ExtensionInstall.StatsFilter;
+import com.redhat.devtools.stats.models.LatestInstall;
+import com.redhat.devtools.stats.models.LatestInstall.ActiveInstalls;
+import com.redhat.devtools.stats.services.CrawlRun;
 import com.redhat.devtools.stats.services.MarketPlaceStatisticsWatcher;
 import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.qute.CheckedTemplate;
 import io.quarkus.qute.TemplateInstance;
-import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.quarkus.scheduler.Scheduler;
+import io.quarkus.scheduler.Trigger;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
 import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.*;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.security.SecurityRequirement;
 import org.jboss.resteasy.annotations.jaxrs.PathParam;
 
 import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.zip.GZIPOutputStream;
 import java.util.stream.Stream;
 
 @Path("/")
@@ -43,57 +67,298 @@ public class ExtensionsResource {
             "total_installed", "onpremDownloads");
     private static final String VALID_STATS_PARAM_MSG = "Valid values for the stats parameter are: "
             + VALID_STATS_PARAM_VALUES;
+    private static final String AUTO_RESOLUTION = "auto";
+    private static final String VALID_RESOLUTION_PARAM_MSG = "Valid values for the resolution parameter are: "
+            + Stream.concat(Stream.of(AUTO_RESOLUTION), Arrays.stream(Resolution.values()).map(r -> r.name().toLowerCase(Locale.ROOT))).toList();
+    private static final String COLUMNAR_FORMAT = "columnar";
+    public static final String COLUMNAR_JSON = "application/vnd.columnar+json";
+    private static final MediaType COLUMNAR_JSON_TYPE = MediaType.valueOf(COLUMNAR_JSON);
+    public static final String ARROW_STREAM = "application/vnd.apache.arrow.stream";
+
+    // Stats are negotiated on Accept too, as JSON or columnar JSON
+    private static final String VARY = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+    private static final String INDEX_KEY = "index";
+    private static final String CSV_HEADER = "version,installs,updates,total_installed,time\n";
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_COMPARED_EXTENSIONS = 50;
+    // The number of points charted by the details page
+    private static final int CHARTED_POINTS = 2000;
 
     @Inject
     private MarketPlaceStatisticsWatcher watcher;
 
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Inject
+    private Scheduler scheduler;
+
+    @Inject
+    private ResponseCache responseCache;
+
+    @Inject
+    @ConfigProperty(name = "export.timeout", defaultValue = "30M")
+    private Duration exportTimeout;
+
     @GET
     @Produces(MediaType.TEXT_HTML)
     @Path("index.html")
-    public TemplateInstance index() {
-        long start = System.currentTimeMillis();
-        List<ExtensionDto> extensions = Extension.findActiveSortedByPopularity();
-        Log.infov("Fetched data in {0} ms", System.currentTimeMillis() - start);
-        return Templates.index(extensions);
+    public CompletionStage<Response> index(@Context HttpHeaders headers) {
+        ActiveInstalls current = LatestInstall.getActiveInstalls();
+        return respond(ConditionalRequest.of(headers), INDEX_KEY, true, current.lastModified(), indexVariant(current), () -> {
+            ActiveInstalls activeInstalls = LatestInstall.getActiveInstalls();
+            long start = System.currentTimeMillis();
+            List<ExtensionDto> extensions = Extension.findActiveSortedByPopularity();
+            Log.infov("Fetched data in {0} ms", System.currentTimeMillis() - start);
+            return new ResponseBody(MediaType.TEXT_HTML, Map.of(), activeInstalls.lastModified(), indexVariant(activeInstalls),
+                    render(Templates.index(extensions)));
+        });
     }
 
     @GET
     @Produces(MediaType.TEXT_HTML)
-    public TemplateInstance get() {
-        return index();
+    public CompletionStage<Response> get(@Context HttpHeaders headers) {
+        return index(headers);
     }
 
     @GET
     @Path("{extensionId}.html")
     @Consumes(MediaType.TEXT_HTML)
     @Produces(MediaType.TEXT_HTML)
-    public TemplateInstance get(@PathParam String extensionId) {
+    public CompletionStage<Response> get(@PathParam String extensionId, @Context HttpHeaders headers) {
         Extension extension = getExtension(extensionId);
-        return Templates.details(extension);
+        return respond(ConditionalRequest.of(headers), "details/" + extensionId, true,
+                LatestInstall.getLastModified(extension), "details:" + metadataHash(List.of(extension)), () -> {
+                    Extension current = getExtension(extensionId);
+                    return new ResponseBody(MediaType.TEXT_HTML, Map.of(), LatestInstall.getLastModified(current),
+                            "details:" + metadataHash(List.of(current)), render(Templates.details(current)));
+                });
     }
 
+    /**
+     * Returns the installs of an extension, grouped by version, as JSON by default. With
+     * <code>Accept: application/vnd.columnar+json</code>, or <code>?format=columnar</code>, each version's installs
+     * are returned as parallel arrays of epoch millis and values instead.
+     * <code>resolution</code> (auto, raw, daily, weekly or monthly) and <code>maxPoints</code> bound the number of points returned.
+     * By default, or with auto, the resolution is picked from the requested time range and <code>maxPoints</code>,
+     * and is raw without <code>maxPoints</code>. The details page charts 2000 points, which are kept up to date across
+     * crawls; other <code>maxPoints</code> are rendered again after each crawl, when first requested.
+     * <code>from</code> (inclusive), <code>to</code> (exclusive) and <code>after</code> (exclusive), as ISO instants or dates,
+     * and <code>version</code> restrict the installs returned.
+     */
     @GET
     @Path("stats/{extensionId}")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response stats(@PathParam String extensionId, @Context UriInfo uriInfo) {
+    @Produces({MediaType.APPLICATION_JSON, COLUMNAR_JSON})
+    public CompletionStage<Response> stats(@PathParam String extensionId, @QueryParam("format") String format,
+                                           @QueryParam("resolution") String resolution, @QueryParam("maxPoints") Integer maxPoints,
+                                           @Context UriInfo uriInfo, @Context HttpHeaders headers) {
         List<String> columns = getColumns(uriInfo);
+        Resolution requestedResolution = getResolution(resolution);
+        validateMaxPoints(maxPoints);
+        StatsFilter filter = getFilter(uriInfo, false);
         Extension extension = getExtension(extensionId);
+        Resolution statsResolution = resolve(extension, requestedResolution, filter, maxPoints);
+        // Negotiated here rather than by JAX-RS, which has no say in which shape wildcards get
+        boolean columnarType = acceptsColumnar(headers);
+        boolean columnar = columnarType || COLUMNAR_FORMAT.equals(format);
+        String prefix = columnarType ? "columnar/" : columnar ? "stats-columnar/" : "stats/";
+        String key = statsKey(prefix, extensionId, statsResolution, filter, maxPoints, columns);
+        StatsWriter<InstallDto> statsWriter = columnar
+                ? (generator, data) -> new ColumnarStatsWriter(generator, columns).write(data)
+                : (generator, data) -> writeVersionStats(generator, columns, data);
+        return respondStats(extension, statsResolution, filter, maxPoints, columns,
+                columnarType ? COLUMNAR_JSON : MediaType.APPLICATION_JSON, key,
+                isCharted(requestedResolution, filter, maxPoints, columns), statsWriter, headers);
+    }
 
-        Map<String, VersionStats> versionStatsMap = new LinkedHashMap<>();
-        long start = System.currentTimeMillis();
-        Stream<ExtensionInstall> data = ExtensionInstall.getFrom(extension);
-        Log.infov("Fetched stats in {0} ms", System.currentTimeMillis() -start);
-
-        start = System.currentTimeMillis();
-        data.forEach(ei -> {
-            VersionStats stats = versionStatsMap.computeIfAbsent(ei.version, VersionStats::new);
-            Map<String, Object> eventData = new HashMap<>();
-            columns.forEach(col -> eventData.put(col, getStat(col, ei)));
-            stats.events.add(eventData);
+    /**
+     * Returns the installs of several extensions, read in a single query, as parallel arrays of epoch millis
+     * and values, like the columnar format of {@link #stats(String, String, String, Integer, UriInfo, HttpHeaders)},
+     * but grouped by extension:
+     * <code>[{"_id": extensionId, "time": [...], "installs": [...]}]</code>, ordered as the extensions were added.
+     * <code>extensions</code> takes the extension ids, repeated or comma separated.
+     * Also accepts the <code>stats</code>, <code>resolution</code> and filter parameters of
+     * {@link #stats(String, String, String, Integer, UriInfo, HttpHeaders)}.
+     */
+    @GET
+    @Path("stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CompletionStage<Response> bulkStats(@QueryParam("resolution") String resolution,
+                                               @Context UriInfo uriInfo, @Context HttpHeaders headers) {
+        List<String> extensionIds = getExtensionIds(uriInfo);
+        List<String> columns = getColumns(uriInfo);
+        // Without maxPoints, there's nothing to pick the resolution from
+        Resolution statsResolution = Objects.requireNonNullElse(getResolution(resolution), Resolution.RAW);
+        StatsFilter filter = getFilter(uriInfo, false);
+        // The extensions are returned in the same order, however they're listed
+        String key = statsKey("bulk/", String.join(",", new TreeSet<>(extensionIds)), statsResolution, filter, null, columns);
+        Instant lastModified = LatestInstall.getLastModified(getExtensions(extensionIds));
+        return respond(ConditionalRequest.of(headers), key, false, lastModified, key, () -> {
+            List<Extension> extensions = getExtensions(extensionIds);
+            Map<Long, String> names = new HashMap<>();
+            extensions.forEach(extension -> names.put(extension.id, extension.name));
+            StatsWriter<ExtensionInstallDto> statsWriter = (generator, data) -> new ColumnarStatsWriter(generator, columns)
+                    .write(data, ei -> names.get(ei.extensionId()), ExtensionInstallDto::install);
+            return new ResponseBody(MediaType.APPLICATION_JSON, Map.of(), LatestInstall.getLastModified(extensions), key,
+                    streamStats(() -> ExtensionInstall.getFrom(extensions, statsResolution, filter), statsWriter));
         });
-        Log.infov("Organized stats in {0} ms",System.currentTimeMillis() -start);
+    }
+
+    /**
+     * Charts several extensions side by side, from {@link #bulkStats(String, UriInfo, HttpHeaders)}.
+     * <code>extensions</code> takes the extension ids, repeated or comma separated.
+     */
+    @GET
+    @Path("compare.html")
+    @Produces(MediaType.TEXT_HTML)
+    public CompletionStage<Response> compare(@Context UriInfo uriInfo, @Context HttpHeaders headers) {
+        List<String> extensionIds = getExtensionIds(uriInfo);
+        String key = "compare/" + String.join(",", new TreeSet<>(extensionIds));
+        List<Extension> compared = getExtensions(extensionIds);
+        return respond(ConditionalRequest.of(headers), key, false, LatestInstall.getLastModified(compared),
+                "compare:" + metadataHash(compared), () -> {
+                    List<Extension> extensions = getExtensions(extensionIds);
+                    return new ResponseBody(MediaType.TEXT_HTML, Map.of(), LatestInstall.getLastModified(extensions),
+                            "compare:" + metadataHash(extensions), render(Templates.compare(extensions)));
+                });
+    }
+
+    private CompletionStage<Response> respondStats(Extension extension, Resolution resolution, StatsFilter filter,
+                                                   Integer maxPoints, List<String> columns, String mediaType, String key,
+                                                   boolean rebuilt, StatsWriter<InstallDto> statsWriter, HttpHeaders headers) {
+        String extensionId = extension.name;
+        return respond(ConditionalRequest.of(headers), key, rebuilt, LatestInstall.getLastModified(extension), key, () -> {
+            Extension current = getExtension(extensionId);
+            return new ResponseBody(mediaType, Map.of(), LatestInstall.getLastModified(current), key,
+                    streamStats(() -> getStats(current, resolution, filter, maxPoints, columns), statsWriter));
+        });
+    }
+
+    /**
+     * Builds the cache key of stats from their parsed parameters, so equivalent queries share their cached response
+     */
+    private static String statsKey(String prefix, String extensions, Resolution resolution, StatsFilter filter,
+                                   Integer maxPoints, List<String> columns) {
+        return prefix + extensions + "?resolution=" + resolution + "&filter=" + filter + "&maxPoints=" + maxPoints
+                + "&stats=" + String.join(",", columns);
+    }
+
+    /**
+     * Tells whether the client asked for columnar JSON, ahead of plain JSON. Wildcards, including a missing
+     * <code>Accept</code> header, get plain JSON.
+     */
+    private static boolean acceptsColumnar(HttpHeaders headers) {
+        // Sorted by preference
+        for (MediaType type : headers.getAcceptableMediaTypes()) {
+            if (COLUMNAR_JSON_TYPE.equals(new MediaType(type.getType(), type.getSubtype()))) {
+                return true;
+            }
+            if (type.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves the automatic resolution, up front, so it's part of the cache key and the entity tag:
+     * it drifts with time, and with it the body
+     */
+    private static Resolution resolve(Extension extension, Resolution resolution, StatsFilter filter, Integer maxPoints) {
+        if (resolution != null) {
+            return resolution;
+        }
+        return maxPoints == null ? Resolution.RAW : ExtensionInstall.getResolution(extension, filter, maxPoints);
+    }
 
-        return Response.ok(versionStatsMap.values()).build();
+    /**
+     * Tells whether stats are the ones charted by the details page, which are rebuilt after each crawl along with it.
+     * There's one set of them per extension, charted stat and resolution picked.
+     * Stats with any other <code>maxPoints</code> are cached too, keyed on it, but only until the next crawl evicts them,
+     * as their number isn't bounded. Until they're cached again, each of their misses counts the installs to downsample.
+     */
+    private static boolean isCharted(Resolution resolution, StatsFilter filter, Integer maxPoints, List<String> columns) {
+        return resolution == null && StatsFilter.NONE.equals(filter) && maxPoints != null && maxPoints == CHARTED_POINTS
+                && columns.size() == 1;
+    }
+
+    private static String indexVariant(ActiveInstalls activeInstalls) {
+        return "index:" + activeInstalls.extensions() + ":" + activeInstalls.metadata();
+    }
+
+    /**
+     * Hashes what pages show of the given extensions besides their installs, as renaming an extension or changing
+     * its icon doesn't change the time of its latest snapshot
+     */
+    private static String metadataHash(List<Extension> extensions) {
+        return Integer.toHexString(extensions.stream()
+                .map(extension -> Objects.hash(extension.name, extension.displayName, extension.icon))
+                .toList()
+                .hashCode());
+    }
+
+    private static Stream<InstallDto> getStats(Extension extension, Resolution resolution, StatsFilter filter,
+                                               Integer maxPoints, List<String> columns) {
+        Stream<InstallDto> data = ExtensionInstall.getFromByVersion(extension, resolution, filter);
+        if (maxPoints == null) {
+            return data;
+        }
+        long points = ExtensionInstall.countFrom(extension, resolution, filter);
+        // Points are picked according to the first charted stat
+        String stat = columns.stream().filter(col -> !"time".equals(col)).findFirst().orElse("total_installed");
+        return StatsDownsampler.downsample(data, points, maxPoints, ei -> ColumnarStatsWriter.getStat(stat, ei));
+    }
+
+    private <T> StreamingOutput streamStats(Supplier<Stream<T>> stats, StatsWriter<T> statsWriter) {
+        return (OutputStream output) -> {
+            long start = System.currentTimeMillis();
+            // The history is read through a cursor, which needs a transaction
+            QuarkusTransaction.requiringNew().run(() -> {
+                try (Stream<T> data = stats.get();
+                     JsonGenerator generator = objectMapper.getFactory().createGenerator(output)
+                             .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)) {
+                    statsWriter.write(generator, data);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Log.infov("Streamed stats in {0} ms", System.currentTimeMillis() - start);
+        };
+    }
+
+    /**
+     * Writes the installs as an array of <code>{"_id": version, "events": [{column: value, ...}]}</code>,
+     * one version at a time, as they're read.
+     */
+    private void writeVersionStats(JsonGenerator generator, List<String> columns, Stream<InstallDto> data) throws IOException {
+        generator.writeStartArray();
+        String version = null;
+        boolean firstVersion = true;
+        for (Iterator<InstallDto> it = data.iterator(); it.hasNext(); ) {
+            InstallDto ei = it.next();
+            if (firstVersion || !Objects.equals(version, ei.version())) {
+                if (!firstVersion) {
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                }
+                version = ei.version();
+                firstVersion = false;
+                generator.writeStartObject();
+                generator.writeStringField("_id", version);
+                generator.writeArrayFieldStart("events");
+            }
+            generator.writeStartObject();
+            for (String col : columns) {
+                generator.writeFieldName(col);
+                writeStat(generator, col, ei);
+            }
+            generator.writeEndObject();
+        }
+        if (!firstVersion) {
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
     }
 
     @POST
@@ -113,16 +378,16 @@ public class ExtensionsResource {
     }
 
 
-    private Object getStat(String col, ExtensionInstall ei) {
-        return switch (col) {
-            case "time" -> ei.time;
-            case "delta" -> ei.delta;
-            case "installs" -> ei.installs;
-            case "updates" -> ei.updates;
-            case "total_installed" -> ei.total_installs;
-            case "onpremDownloads" -> ei.onpremDownloads;
+    private void writeStat(JsonGenerator generator, String col, InstallDto ei) throws IOException {
+        switch (col) {
+            case "time" -> generator.writeObject(ei.time());
+            case "delta" -> generator.writeNumber(ei.delta());
+            case "installs" -> generator.writeNumber(ei.installs());
+            case "updates" -> generator.writeNumber(ei.updates());
+            case "total_installed" -> generator.writeNumber(ei.total_installs());
+            case "onpremDownloads" -> generator.writeNumber(ei.onpremDownloads());
             default -> throw new IllegalStateException("Unexpected value: " + col);
-        };
+        }
     }
 
     private static List<String> getColumns(UriInfo uriInfo) {
@@ -134,6 +399,63 @@ public class ExtensionsResource {
         return columns;
     }
 
+    /**
+     * @return the requested resolution, or null if it's to be picked automatically
+     */
+    private static Resolution getResolution(String resolution) {
+        if (resolution == null || resolution.isBlank() || AUTO_RESOLUTION.equals(resolution)) {
+            return null;
+        }
+        try {
+            return Resolution.valueOf(resolution.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException("Invalid value for the resolution parameter: \"" + resolution + "\"\n"
+                    + VALID_RESOLUTION_PARAM_MSG, Response.Status.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Reads the <code>from</code>, <code>to</code>, <code>version</code> and <code>after</code> parameters,
+     * and <code>limit</code> when the installs are paged.
+     */
+    private static StatsFilter getFilter(UriInfo uriInfo, boolean paged) {
+        MultivaluedMap<String, String> params = uriInfo.getQueryParameters();
+        String version = params.getFirst("version");
+        Integer limit = null;
+        String limitParam = params.getFirst("limit");
+        if (paged && limitParam != null) {
+            try {
+                limit = Integer.valueOf(limitParam);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1) {
+                throw new WebApplicationException("The limit parameter must be a positive integer", Response.Status.BAD_REQUEST);
+            }
+        }
+        return new StatsFilter(getTime(params, "from"), getTime(params, "to"),
+                version == null || version.isBlank() ? null : version, getTime(params, "after"), limit);
+    }
+
+    private static Instant getTime(MultivaluedMap<String, String> params, String name) {
+        String value = params.getFirst(name);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return value.contains("T") ? Instant.parse(value) : LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new WebApplicationException("Invalid value for the " + name + " parameter: \"" + value + "\"\n"
+                    + "Valid values are ISO-8601 instants or dates, e.g. 2023-12-31T23:59:59Z or 2023-12-31", Response.Status.BAD_REQUEST);
+        }
+    }
+
+    private static void validateMaxPoints(Integer maxPoints) {
+        if (maxPoints != null && maxPoints < 1) {
+            throw new WebApplicationException("The maxPoints parameter must be positive", Response.Status.BAD_REQUEST);
+        }
+    }
+
     private static void validate(List<String> columns) {
         StringBuilder errorMessage = new StringBuilder();
         for (String value : columns) {
@@ -146,34 +468,179 @@ public class ExtensionsResource {
         }
     }
 
+    /**
+     * Returns the installs of an extension as CSV, ordered by time, filtered like
+     * {@link #stats(String, String, String, Integer, UriInfo, HttpHeaders)}.
+     * With <code>limit</code>, at most that many installs are returned, and a <code>Link: rel="next"</code> header
+     * points to the next page, which resumes after the time of the last install returned.
+     */
     @GET
     @Path("{extensionId}.csv")
     @Consumes(MediaType.TEXT_PLAIN)
     @Produces("text/csv")
-    public Response csv(@PathParam String extensionId) {
+    public CompletionStage<Response> csv(@PathParam String extensionId, @QueryParam("resolution") String resolution,
+                                         @Context UriInfo uriInfo, @Context HttpHeaders headers) {
+        Resolution csvResolution = Objects.requireNonNullElse(getResolution(resolution), Resolution.RAW);
+        StatsFilter filter = getFilter(uriInfo, true);
+        String key = statsKey("csv/", extensionId, csvResolution, filter, null, List.of());
+        // The body is rendered on another thread, outside of the request
+        String basePath = uriInfo.getBaseUri().getPath();
         Extension extension = getExtension(extensionId);
-        StreamingOutput streamingOutput = (OutputStream output) -> {
-            Writer writer = new BufferedWriter(new OutputStreamWriter(output));
-            // Create a CSV header
-            String header = "version,installs,updates,total_installed,time\n"; // Replace with your column names
-            writer.write(header);
-
-            Stream<ExtensionInstall> installs = ExtensionInstall.getFrom(extension);
-            installs.map(this::toCSV).forEach(csv -> {
-                try {
-                    writer.write(csv);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+        return respond(ConditionalRequest.of(headers), key, false, LatestInstall.getLastModified(extension), key, () -> {
+            Extension current = getExtension(extensionId);
+            Map<String, String> csvHeaders = new HashMap<>();
+            csvHeaders.put("content-disposition", "attachment; filename = " + extensionId + ".csv");
+            Instant pageEnd = ExtensionInstall.getPageEnd(current, csvResolution, filter);
+            if (pageEnd != null) {
+                URI next = getNextPage(basePath, extensionId, csvResolution, filter, pageEnd);
+                csvHeaders.put(HttpHeaders.LINK, Link.fromUri(next).rel("next").build().toString());
+            }
+            return new ResponseBody("text/csv", csvHeaders, LatestInstall.getLastModified(current), key, (OutputStream output) -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                writer.write(CSV_HEADER);
+
+                // The history is read through a cursor, which needs a transaction
+                QuarkusTransaction.requiringNew().run(() -> {
+                    try (Stream<InstallDto> installs = ExtensionInstall.getFrom(current, csvResolution, filter)) {
+                        for (Iterator<InstallDto> it = installs.iterator(); it.hasNext(); ) {
+                            writeCSV(writer, it.next());
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.flush();
             });
-            writer.flush();
+        });
+    }
+
+    /**
+     * Builds the link to the page of installs following the one ending at <code>pageEnd</code>, from the parsed
+     * parameters, as a path relative to the host, so it doesn't depend on how the first page was requested
+     */
+    private static URI getNextPage(String basePath, String extensionId, Resolution resolution, StatsFilter filter,
+                                   Instant pageEnd) {
+        UriBuilder next = UriBuilder.fromPath(basePath).path(extensionId + ".csv")
+                .queryParam("resolution", resolution.name().toLowerCase(Locale.ROOT));
+        if (filter.from() != null) {
+            next.queryParam("from", filter.from());
+        }
+        if (filter.to() != null) {
+            next.queryParam("to", filter.to());
+        }
+        if (filter.version() != null) {
+            next.queryParam("version", filter.version());
+        }
+        return next.queryParam("after", pageEnd)
+                .queryParam("limit", filter.limit())
+                .build();
+    }
+
+    /**
+     * Answers 304 when the client's copy is still current, as told by validators derived from the time of the latest
+     * snapshot and the variant, before the body is even looked up. Otherwise, answers the cached body, gzipped if the
+     * client accepts it, or streams it if it's too large to be cached. A cached body whose validators don't match
+     * anymore is rendered again. Either way, responses can be cached until the next crawl.
+     *
+     * @param lastModified the time of the latest snapshot of the resource, or null if there's none
+     * @param body supplies the body to render, with its own validators, as it's rendered later or rebuilt after crawls
+     */
+    private CompletionStage<Response> respond(ConditionalRequest conditions, String key, boolean rebuilt,
+                                              Instant lastModified, String variant, Supplier<ResponseBody> body) {
+        EntityTag etag = CachedResponse.etag(lastModified, variant, conditions.acceptsGzip());
+        if (etag != null && conditions.notModified(etag, lastModified)) {
+            return CompletableFuture.completedFuture(Response.notModified(etag)
+                    .lastModified(Date.from(lastModified))
+                    .cacheControl(getCacheControl())
+                    .header(HttpHeaders.VARY, VARY)
+                    .build());
+        }
+        return responseCache.get(key, rebuilt, body, cached -> Objects.equals(etag, cached.etag(conditions.acceptsGzip())))
+                .thenApply(cached -> cached != null
+                ? respond(conditions, cached)
+                : stream(conditions, QuarkusTransaction.requiringNew().call(body::get)));
+    }
+
+    private Response respond(ConditionalRequest conditions, CachedResponse cached) {
+        boolean gzip = conditions.acceptsGzip();
+        return ok(gzip ? cached.gzippedBody() : cached.body(), cached.mediaType(), gzip, cached.etag(gzip),
+                cached.lastModified(), cached.headers());
+    }
+
+    private Response stream(ConditionalRequest conditions, ResponseBody body) {
+        boolean gzip = conditions.acceptsGzip();
+        StreamingOutput output = gzip ? gzip(body.output()) : body.output();
+        return ok(output, body.mediaType(), gzip, CachedResponse.etag(body.lastModified(), body.variant(), gzip),
+                body.lastModified(), body.headers());
+    }
+
+    private Response ok(Object entity, String mediaType, boolean gzip, EntityTag etag, Instant lastModified,
+                        Map<String, String> headers) {
+        Response.ResponseBuilder response = Response.ok(entity, mediaType)
+                .cacheControl(getCacheControl())
+                .header(HttpHeaders.VARY, VARY);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if (etag != null) {
+            response.tag(etag).lastModified(Date.from(lastModified));
+        }
+        headers.forEach(response::header);
+        return response.build();
+    }
+
+    private static StreamingOutput render(TemplateInstance template) {
+        return (OutputStream output) -> output.write(template.render().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static StreamingOutput gzip(StreamingOutput body) {
+        return (OutputStream output) -> {
+            GZIPOutputStream gzipped = new GZIPOutputStream(output, EXPORT_BUFFER_SIZE);
+            body.write(gzipped);
+            gzipped.finish();
+            gzipped.flush();
         };
-        return Response.ok(streamingOutput,
-                        MediaType.APPLICATION_OCTET_STREAM)
-                .header("Content-Type","'Content-Type: text/csv'")
-                .header("content-disposition",
-                        "attachment; filename = "+extensionId+".csv").
-                build();
+    }
+
+    private CacheControl getCacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        Trigger crawl = scheduler.getScheduledJob(MarketPlaceStatisticsWatcher.CRAWL_JOB);
+        Instant nextCrawl = crawl == null ? null : crawl.getNextFireTime();
+        long maxAge = nextCrawl == null ? 0 : Math.max(0, Duration.between(Instant.now(), nextCrawl).getSeconds());
+        cacheControl.setMaxAge((int) maxAge);
+        return cacheControl;
+    }
+
+    private static List<String> getExtensionIds(UriInfo uriInfo) {
+        List<String> params = uriInfo.getQueryParameters().get("extensions");
+        List<String> extensionIds = params == null ? List.of() : params.stream()
+                .flatMap(param -> Arrays.stream(param.split(",")))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .distinct()
+                .toList();
+        if (extensionIds.isEmpty()) {
+            throw new WebApplicationException("The extensions parameter is missing", Response.Status.BAD_REQUEST);
+        }
+        if (extensionIds.size() > MAX_COMPARED_EXTENSIONS) {
+            throw new WebApplicationException("At most " + MAX_COMPARED_EXTENSIONS + " extensions can be compared",
+                    Response.Status.BAD_REQUEST);
+        }
+        return extensionIds;
+    }
+
+    /**
+     * Looks up all the extensions in a single query, ordered as they were added
+     */
+    private static List<Extension> getExtensions(List<String> extensionIds) {
+        List<Extension> extensions = new ArrayList<>(Extension.findByNames(extensionIds));
+        if (extensions.size() < extensionIds.size()) {
+            Set<String> unknown = new LinkedHashSet<>(extensionIds);
+            extensions.forEach(extension -> unknown.remove(extension.name));
+            throw new NotFoundException("Unknown extensions: " + unknown);
+        }
+        extensions.sort(Comparator.comparing(extension -> extension.id));
+        return extensions;
     }
 
     private static Extension getExtension(String extensionId) {
@@ -184,17 +651,113 @@ public class ExtensionsResource {
         return extension;
     }
 
-    private String toCSV(ExtensionInstall install) {
-        return install.version+","+install.installs+","+install.updates+","+install.total_installs+","+install.time+"\n";
+    private static void writeCSV(Writer writer, InstallDto install) throws IOException {
+        writer.write(install.version());
+        writer.write(',');
+        writer.write(Long.toString(install.installs()));
+        writer.write(',');
+        writer.write(Long.toString(install.updates()));
+        writer.write(',');
+        writer.write(Long.toString(install.total_installs()));
+        writer.write(',');
+        writer.write(install.time().toString());
+        writer.write('\n');
     }
 
+    /**
+     * Exports the install history of all extensions as CSV, straight from PostgreSQL, in storage order.
+     * Gzipped on the fly when the client accepts it.
+     */
+    @GET
+    @Path("export.csv")
+    @Produces("text/csv")
+    public Response export(@Context HttpHeaders headers) {
+        String acceptEncoding = headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        Response.ResponseBuilder response = Response.ok(exportHistory(ExtensionInstall::exportCsv, gzip), "text/csv")
+                .header("content-disposition", "attachment; filename = installs.csv")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
+
+    /**
+     * Same as {@link #export(HttpHeaders)}, as a gzipped file
+     */
+    @GET
+    @Path("export.csv.gz")
+    @Produces("application/gzip")
+    public Response exportGzipped() {
+        return Response.ok(exportHistory(ExtensionInstall::exportCsv, true), "application/gzip")
+                .header("content-disposition", "attachment; filename = installs.csv.gz")
+                .build();
+    }
 
+    /**
+     * Exports the install history of all extensions as an Arrow IPC stream, in record batches, in storage order.
+     * Columns are the same as {@link #export(HttpHeaders)}'s, with times in UTC.
+     */
+    @GET
+    @Path("export.arrow")
+    @Produces(ARROW_STREAM)
+    public Response exportArrow() {
+        return Response.ok(exportHistory(ExtensionInstall::exportArrow, false), ARROW_STREAM)
+                .header("content-disposition", "attachment; filename = installs.arrow")
+                .build();
+    }
+
+    private StreamingOutput exportHistory(ToLongFunction<OutputStream> exporter, boolean gzip) {
+        return (OutputStream output) -> {
+            long start = System.currentTimeMillis();
+            OutputStream target = gzip
+                    ? new GZIPOutputStream(output, EXPORT_BUFFER_SIZE)
+                    : new BufferedOutputStream(output, EXPORT_BUFFER_SIZE);
+            // The whole history is read in a single transaction, which outlasts the default transaction timeout
+            long rows = QuarkusTransaction.requiringNew()
+                    .timeout((int) exportTimeout.toSeconds())
+                    .call(() -> exporter.applyAsLong(target));
+            if (target instanceof GZIPOutputStream gzipped) {
+                gzipped.finish();
+            }
+            target.flush();
+            Log.infov("Exported {0} installs in {1} ms", rows, System.currentTimeMillis() - start);
+        };
+    }
+
+
+    /**
+     * Triggers a crawl in the background, or joins the one in flight, and answers 202 with its status,
+     * which can then be followed at <code>/crawls/{crawlId}</code>.
+     */
     @GET
     @Path("refresh")
-    @Produces(MediaType.TEXT_HTML)
-    public TemplateInstance refresh() {
-        watcher.refresh();
-        return get();
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response refresh(@Context UriInfo uriInfo) {
+        CrawlRun run = watcher.refresh();
+        return Response.accepted(run.getStatus())
+                .location(uriInfo.getBaseUriBuilder().path("crawls").path(String.valueOf(run.getId())).build())
+                .build();
+    }
+
+    /**
+     * Returns the progress of a recent crawl, per publisher, with timings
+     */
+    @GET
+    @Path("crawls/{crawlId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CrawlRun.Status crawlStatus(@PathParam long crawlId) {
+        CrawlRun run = watcher.getRun(crawlId);
+        if (run == null) {
+            throw new NotFoundException("Unknown crawl: " + crawlId);
+        }
+        return run.getStatus();
+    }
+
+    @FunctionalInterface
+    private interface StatsWriter<T> {
+        void write(JsonGenerator generator, Stream<T> data) throws IOException;
     }
 
     @CheckedTemplate
@@ -202,15 +765,7 @@ public class ExtensionsResource {
         public static native TemplateInstance index(List<ExtensionDto> extensions);
 
         public static native TemplateInstance details(Extension extension);
-    }
 
-    @RegisterForReflection
-    public class VersionStats {
-        public String _id;
-        public List<Map<String, ?>> events = new ArrayList<>();
-
-        public VersionStats(String version) {
-            _id=version;
-        }
+        public static native TemplateInstance compare(List<Extension> extensions);
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.endpoints;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.redhat.devtools.stats.services.MarketPlaceService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.redhat.devtools.stats.utils.JsonUtils.*;
+
+/**
+ * Holds the publishers served by the marketplace facade, with their extensions as the marketplace returns them. Past <code>facade-cache.soft-ttl</code>, the next request
+ * still gets the cached publisher while it's refreshed in the background. Past <code>facade-cache.hard-ttl</code>,
+ * e.g. for publishers nobody asked for in a while, it's fetched again. Concurrent requests for the same publisher
+ * share a single fetch, which runs in the background too, so requests don't hold a worker thread while it's in flight.
+ */
+@ApplicationScoped
+public class MarketplaceFacadeCache {
+
+    private static final String CACHE_NAME = "marketplace-facade";
+
+    @Inject
+    @ConfigProperty(name = "facade-cache.soft-ttl", defaultValue = "5M")
+    Duration softTtl;
+
+    @Inject
+    @ConfigProperty(name = "facade-cache.hard-ttl", defaultValue = "1H")
+    Duration hardTtl;
+
+    @Inject
+    @ConfigProperty(name = "facade-cache.max-size", defaultValue = "500")
+    long maxSize;
+
+    @Inject
+    @ConfigProperty(name = "facade-cache.fetch-concurrency", defaultValue = "2")
+    int fetchConcurrency;
+
+    @Inject
+    MarketPlaceService service;
+
+    @Inject
+    MeterRegistry registry;
+
+    private AsyncLoadingCache<String, Map<String, JsonObject>> cache;
+    private ExecutorService fetchExecutor;
+    private Counter upstreamCalls;
+
+    @PostConstruct
+    void init() {
+        fetchExecutor = Executors.newFixedThreadPool(fetchConcurrency);
+        upstreamCalls = Counter.builder(CACHE_NAME + ".upstream.calls")
+                .description("Publishers fetched from the marketplace for the facade")
+                .register(registry);
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(softTtl)
+                .expireAfterWrite(hardTtl)
+                .executor(fetchExecutor)
+                .recordStats()
+                .buildAsync(this::fetch);
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the marketplace JSON of an extension, or null if it doesn't exist. Already completed on hits.
+     */
+    public CompletableFuture<JsonObject> getExtensionData(String extensionId) {
+        String publisherId = getPublisherName(extensionId);
+        if (publisherId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return cache.get(publisherId).thenApply(extensions -> extensions.get(getExtensionName(extensionId)));
+    }
+
+    private Map<String, JsonObject> fetch(String publisherId) {
+        upstreamCalls.increment();
+        return service.fetchPublisherJson(publisherId);
+    }
+}
@@ -15,8 +15,6 @@
  */
 package com.redhat.devtools.stats.endpoints;
 
-import com.redhat.devtools.stats.services.MarketPlaceService;
-import io.vertx.core.json.JsonObject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
@@ -24,23 +22,26 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.jboss.resteasy.annotations.jaxrs.PathParam;
 
+import java.util.concurrent.CompletionStage;
+
 @Path("/api")
 public class MarketplaceFacadeResource {
 
-    private final MarketPlaceService service;
+    private final MarketplaceFacadeCache cache;
 
-    public MarketplaceFacadeResource(MarketPlaceService service) {
-        this.service = service;
+    public MarketplaceFacadeResource(MarketplaceFacadeCache cache) {
+        this.cache = cache;
     }
 
     @Path("{extensionId}")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getJson(@PathParam String extensionId) {
-        JsonObject extensionJson = service.getExtensionData(extensionId);
-        if (extensionJson == null) {
-            return Response.status(Response.Status.NOT_FOUND).build();
-        }
-        return Response.ok(extensionJson).build();
+    public CompletionStage<Response> getJson(@PathParam String extensionId) {
+        return cache.getExtensionData(extensionId).thenApply(extensionData -> {
+            if (extensionData == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            return Response.ok(extensionData).build();
+        });
     }
 }
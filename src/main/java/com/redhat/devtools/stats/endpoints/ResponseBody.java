@@ -0,0 +1,31 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.endpoints;
+
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A response body yet to be written, cached as a {@link CachedResponse} when it's small enough, streamed otherwise.
+ *
+ * @param lastModified the time of the latest snapshot the body is read from, or null if there's none
+ * @param variant distinguishes the different representations of a resource
+ */
+record ResponseBody(String mediaType, Map<String, String> headers, Instant lastModified, String variant,
+                    StreamingOutput output) {
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.endpoints;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.redhat.devtools.stats.services.CrawlCompleted;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.configuration.MemorySize;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Holds rendered responses between crawls. Once a crawl commits, the responses flagged to be rebuilt are rendered again
+ * in the background and swapped in, so readers keep getting the previous ones instead of waiting for a cold computation.
+ * The other responses are outdated: each response records the crawl generation it was rendered in, and responses
+ * rendered before the last crawl are evicted, or rejected when read if they were still being rendered.
+ * Missing responses are rendered on a pool bounded by <code>response-cache.render-concurrency</code>, once per key,
+ * so a burst of requests for cold pages doesn't hold a worker thread per request.
+ * Bodies larger than <code>response-cache.max-entry-size</code> aren't kept, only the fact they're to be streamed.
+ */
+@ApplicationScoped
+public class ResponseCache {
+
+    private static final String CACHE_NAME = "responses";
+
+    @Inject
+    @ConfigProperty(name = "response-cache.max-size", defaultValue = "64M")
+    MemorySize maxSize;
+
+    @Inject
+    @ConfigProperty(name = "response-cache.max-entry-size", defaultValue = "1M")
+    MemorySize maxEntrySize;
+
+    @Inject
+    @ConfigProperty(name = "response-cache.render-concurrency", defaultValue = "4")
+    int renderConcurrency;
+
+    @Inject
+    MeterRegistry registry;
+
+    private final AtomicLong generation = new AtomicLong();
+    private AsyncCache<String, Entry> cache;
+    private Timer missTimer;
+    private Timer rebuildTimer;
+    private ExecutorService renderExecutor;
+    private ExecutorService rebuildExecutor;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.asLongValue())
+                .weigher((String key, Entry entry) -> entry.response() == null ? key.length() : entry.response().size())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+        missTimer = Timer.builder(CACHE_NAME + ".cache.build")
+                .description("Time spent rendering responses")
+                .tag("trigger", "miss")
+                .register(registry);
+        rebuildTimer = Timer.builder(CACHE_NAME + ".cache.build")
+                .description("Time spent rendering responses")
+                .tag("trigger", "crawl")
+                .register(registry);
+        renderExecutor = Executors.newFixedThreadPool(renderConcurrency);
+        rebuildExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        renderExecutor.shutdownNow();
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the cached response for the given key, rendering the body supplied by the given loader if it's missing.
+     * Completes with null if the body is too large to be cached, in which case it's to be streamed.
+     * The returned stage is already completed on hits. Concurrent misses for the same key share the same rendering.
+     * With <code>rebuilt</code>, the loader is kept to rebuild the response after the next crawl, so it must not capture
+     * any request state. Only a bounded set of keys should be rebuilt, e.g. the pages every visitor gets.
+     */
+    public CompletableFuture<CachedResponse> get(String key, boolean rebuilt, Supplier<ResponseBody> loader) {
+        return get(key, rebuilt, loader, response -> true);
+    }
+
+    /**
+     * Same as {@link #get(String, boolean, Supplier)}, but renders the body again when the cached one isn't
+     * <code>current</code> anymore, e.g. when it was rendered before the metadata of an extension changed.
+     */
+    public CompletableFuture<CachedResponse> get(String key, boolean rebuilt, Supplier<ResponseBody> loader,
+                                                 Predicate<CachedResponse> current) {
+        CompletableFuture<Entry> cached = load(key, rebuilt, loader);
+        return cached.thenCompose(entry -> {
+            if (entry.response() == null || !isOutdated(entry) && current.test(entry.response())) {
+                return CompletableFuture.completedFuture(entry.response());
+            }
+            // Unless another request replaced it already
+            cache.asMap().remove(key, cached);
+            return load(key, rebuilt, loader).thenApply(Entry::response);
+        });
+    }
+
+    private CompletableFuture<Entry> load(String key, boolean rebuilt, Supplier<ResponseBody> loader) {
+        return cache.get(key, (k, executor) -> CompletableFuture.supplyAsync(() -> {
+            long renderedGeneration = generation.get();
+            return new Entry(loader, rebuilt, renderedGeneration, build(loader, missTimer));
+        }, renderExecutor));
+    }
+
+    /**
+     * Tells whether a response was rendered before the last crawl. Responses to rebuild are still served until then.
+     * Streamed responses hold no data that could be outdated.
+     */
+    private boolean isOutdated(Entry entry) {
+        return !entry.rebuilt() && entry.response() != null && entry.generation() < generation.get();
+    }
+
+    void onCrawlCompleted(@Observes(during = TransactionPhase.AFTER_SUCCESS) CrawlCompleted event) {
+        long crawl = generation.incrementAndGet();
+        // Responses still being rendered aren't in the synchronous view, they're rejected once read
+        cache.synchronous().asMap().values().removeIf(this::isOutdated);
+        rebuildExecutor.submit(() -> rebuild(crawl));
+    }
+
+    private void rebuild(long crawl) {
+        ConcurrentMap<String, CompletableFuture<Entry>> entries = cache.asMap();
+        Log.infov("Rebuilding up to {0} cached responses", entries.size());
+        entries.forEach((key, cached) -> {
+            if (cached.isDone()) {
+                rebuild(key, cached, crawl);
+            } else {
+                // It may have read the data from before the crawl
+                cached.thenRunAsync(() -> rebuild(key, cached, crawl), rebuildExecutor);
+            }
+        });
+    }
+
+    private void rebuild(String key, CompletableFuture<Entry> cached, long crawl) {
+        if (cached.isCompletedExceptionally() || generation.get() != crawl) {
+            // Failed renders are dropped, and the next crawl rebuilds everything anyway
+            return;
+        }
+        Entry entry = cached.join();
+        if (!entry.rebuilt() || entry.response() == null || entry.generation() >= crawl) {
+            return;
+        }
+        try {
+            long renderedGeneration = generation.get();
+            CachedResponse response = build(entry.loader(), rebuildTimer);
+            cache.asMap().replace(key, cached,
+                    CompletableFuture.completedFuture(new Entry(entry.loader(), true, renderedGeneration, response)));
+        } catch (RuntimeException e) {
+            // e.g. the extension doesn't exist anymore
+            Log.debugv(e, "Failed to rebuild {0}, evicting it", key);
+            cache.asMap().remove(key, cached);
+        }
+    }
+
+    /**
+     * Performs the pending evictions, for tests
+     */
+    void cleanUp() {
+        cache.synchronous().cleanUp();
+    }
+
+    /**
+     * Waits for the responses already rendered to be rebuilt after a crawl, for tests
+     */
+    void awaitRebuild() throws InterruptedException, ExecutionException {
+        rebuildExecutor.submit(() -> {
+        }).get();
+    }
+
+    private CachedResponse build(Supplier<ResponseBody> loader, Timer timer) {
+        return timer.record(() -> QuarkusTransaction.requiringNew().call(
+                () -> CachedResponse.render(loader.get(), maxEntrySize.asLongValue())));
+    }
+
+    /**
+     * @param generation the number of crawls completed when the response started rendering
+     * @param response the rendered response, or null if it's to be streamed
+     */
+    private record Entry(Supplier<ResponseBody> loader, boolean rebuilt, long generation, CachedResponse response) {
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.models.ExtensionInstall.InstallDto;
+
+import java.util.*;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Downsamples installs grouped by version with the Largest-Triangle-Three-Buckets algorithm.
+ * Each version keeps a share of the points proportional to its size, and only one version is held in memory at a time.
+ */
+class StatsDownsampler {
+
+    private StatsDownsampler() {
+    }
+
+    /**
+     * @param data installs, grouped by version
+     * @param totalPoints the number of installs in data
+     * @param maxPoints the number of points to keep, give or take the first and last points of small versions
+     * @param value the value used to pick the points to keep
+     */
+    static Stream<InstallDto> downsample(Stream<InstallDto> data, long totalPoints, int maxPoints, ToLongFunction<InstallDto> value) {
+        if (totalPoints <= maxPoints) {
+            return data;
+        }
+        Iterator<List<InstallDto>> versions = new VersionIterator(data.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(versions, Spliterator.ORDERED), false)
+                .flatMap(points -> {
+                    int threshold = (int) Math.max(1, Math.round((double) maxPoints * points.size() / totalPoints));
+                    return lttb(points, threshold, value).stream();
+                })
+                .onClose(data::close);
+    }
+
+    static List<InstallDto> lttb(List<InstallDto> points, int threshold, ToLongFunction<InstallDto> value) {
+        int size = points.size();
+        if (threshold >= size) {
+            return points;
+        }
+        if (threshold == 1) {
+            return List.of(points.get(size - 1));
+        }
+        if (threshold == 2) {
+            return List.of(points.get(0), points.get(size - 1));
+        }
+        List<InstallDto> sampled = new ArrayList<>(threshold);
+        // Points between the first and the last ones are split in threshold - 2 buckets, keeping one point per bucket
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int selected = 0;
+        sampled.add(points.get(selected));
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, the third point of the triangle
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x(points.get(i));
+                avgY += value.applyAsLong(points.get(i));
+            }
+            avgX /= nextEnd - nextStart;
+            avgY /= nextEnd - nextStart;
+
+            // Keep the point of the current bucket forming the largest triangle with the previously selected point
+            double selectedX = x(points.get(selected));
+            double selectedY = value.applyAsLong(points.get(selected));
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = nextStart;
+            double maxArea = -1;
+            int next = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((selectedX - avgX) * (value.applyAsLong(points.get(i)) - selectedY)
+                        - (selectedX - x(points.get(i))) * (avgY - selectedY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+            sampled.add(points.get(next));
+            selected = next;
+        }
+        sampled.add(points.get(size - 1));
+        return sampled;
+    }
+
+    private static double x(InstallDto ei) {
+        return ei.time().toEpochMilli();
+    }
+
+    /**
+     * Groups consecutive installs of the same version
+     */
+    private static class VersionIterator implements Iterator<List<InstallDto>> {
+
+        private final Iterator<InstallDto> installs;
+        private InstallDto pending;
+
+        VersionIterator(Iterator<InstallDto> installs) {
+            this.installs = installs;
+            this.pending = installs.hasNext() ? installs.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending != null;
+        }
+
+        @Override
+        public List<InstallDto> next() {
+            if (pending == null) {
+                throw new NoSuchElementException();
+            }
+            List<InstallDto> version = new ArrayList<>();
+            version.add(pending);
+            pending = null;
+            while (installs.hasNext()) {
+                InstallDto ei = installs.next();
+                if (!Objects.equals(ei.version(), version.get(0).version())) {
+                    pending = ei;
+                    break;
+                }
+                version.add(ei);
+            }
+            return version;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.health;
+
+import com.redhat.devtools.stats.models.LatestInstall;
+import com.redhat.devtools.stats.services.MarketPlaceStatisticsWatcher;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ready as soon as there's something to serve: either the initial crawl completed,
+ * or the database already holds installs from previous runs, which are served while the initial crawl is running.
+ * An initial crawl that failed, as a whole or for some publishers, leaves the data stale.
+ */
+@Readiness
+@ApplicationScoped
+public class InitialCrawlReadinessCheck implements HealthCheck {
+
+    static final String NAME = "initial-crawl";
+
+    @Inject
+    MarketPlaceStatisticsWatcher watcher;
+
+    private volatile boolean hasData;
+
+    @Override
+    public HealthCheckResponse call() {
+        return call(watcher.getInitialCrawl(), this::hasData);
+    }
+
+    static HealthCheckResponse call(CompletableFuture<Void> initialCrawl, BooleanSupplier hasData) {
+        HealthCheckResponseBuilder response = HealthCheckResponse.named(NAME);
+        if (initialCrawl.isDone() && !initialCrawl.isCompletedExceptionally()) {
+            return response.up().withData("data", "up to date").build();
+        }
+        if (initialCrawl.isDone()) {
+            response.withData("initialCrawl", "failed").withData("error", getError(initialCrawl));
+        } else {
+            response.withData("initialCrawl", "running");
+        }
+        if (hasData.getAsBoolean()) {
+            return response.up().withData("data", "stale").build();
+        }
+        return response.down().withData("data", "none yet").build();
+    }
+
+    private static String getError(CompletableFuture<Void> initialCrawl) {
+        try {
+            initialCrawl.join();
+            return null;
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            return String.valueOf(cause.getMessage());
+        }
+    }
+
+    private boolean hasData() {
+        if (!hasData) {
+            // Once there's data, there's no need to check again
+            hasData = QuarkusTransaction.requiringNew().call(() -> LatestInstall.count() > 0);
+        }
+        return hasData;
+    }
+}
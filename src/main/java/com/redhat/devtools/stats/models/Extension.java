@@ -20,6 +20,7 @@ import io.quarkus.panache.common.Sort;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import jakarta.persistence.*;
 
+import java.util.Collection;
 import java.util.List;
 
 @Entity
@@ -47,23 +48,45 @@ public class Extension extends PanacheEntityBase {
         return find("active", Sort.ascending("id"), true).list();
     }
 
+    public static List<Extension> findActiveByPublisher(String publisher) {
+        // _ is valid in publisher names, and mustn't match any character
+        return find("active = true and name like ?1 escape '\\'", Sort.ascending("id"), escapeLike(publisher) + ".%").list();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    public static List<Extension> findByIds(Collection<Long> ids) {
+        return list("id in ?1", ids);
+    }
+
+    /**
+     * Marks the given extensions as inactive, in a single statement
+     *
+     * @return the number of extensions deactivated
+     */
+    public static int deactivate(Collection<Long> ids) {
+        return update("active = false where id in ?1", ids);
+    }
+
     public static Extension findByName(String name) {
         return find("name", name).firstResult();
     }
 
+    public static List<Extension> findByNames(Collection<String> names) {
+        return list("name in ?1", names);
+    }
+
     @RegisterForReflection
-    public static record ExtensionDto (Extension extension, Integer installs){};
+    public static record ExtensionDto (Extension extension, Long installs){};
 
     public static List<ExtensionDto> findActiveSortedByPopularity() {
         String query = """
-            select e, installs FROM Extension e
-            LEFT JOIN LATERAL (
-                SELECT ei.extension.id AS extId, max(ei.time) as latest, max(ei.installs) as installs
-                FROM ExtensionInstall ei
-                GROUP BY extId
-            ) as popular ON e.id = extId
+            select e, latest.installs FROM Extension e
+            LEFT JOIN LatestInstall latest ON latest.extensionId = e.id
             where e.active = true
-            order by installs DESC
+            order by latest.installs DESC
         """;
         return find(query).project(ExtensionDto.class).list();
     }
@@ -17,11 +17,35 @@ package com.redhat.devtools.stats.models;
 
 import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
 import io.quarkus.panache.common.Sort;
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import jakarta.persistence.*;
+import org.apache.arrow.adapter.jdbc.ArrowVectorIterator;
+import org.apache.arrow.adapter.jdbc.JdbcToArrow;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowConfig;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowConfigBuilder;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowUtils;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.hibernate.Session;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.SqlTypes;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Stream;
 
 @Entity
@@ -31,22 +55,29 @@ public class ExtensionInstall extends PanacheEntityBase {
     @SequenceGenerator(
             name = "extensionInstallSequenceGenerator",
             sequenceName = "ExtensionInstall_SEQ",
-            allocationSize = 1 //No need for hibernate to be clever, insert volume is quite low
+            allocationSize = 50 //Pooled, matches the sequence increment, so a crawl doesn't pay a sequence round-trip per snapshot
     )
     public Long id;
 
     @ManyToOne
     public Extension extension;
-    public int delta;
-    public int installs;
-    public int updates;
+    public long delta;
+    public long installs;
+    public long updates;
     public String version;
-    public int total_installs;
+    public long total_installs;
     public Instant time;
-    public int onpremDownloads;
+    public long onpremDownloads;
+
+    /**
+     * The extra statistics configured with <code>marketplace-api.extra-statistics</code>, keyed by name
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    public Map<String, Double> extraStatistics;
 
     private static final String EXTENSION_FIELD = "extension";
     private static final String TIME_FIELD = "time";
+    private static final int FETCH_SIZE = 1000;
 
     public static ExtensionInstall getLastInstall(Extension e) {
         return find(EXTENSION_FIELD, Sort.descending(TIME_FIELD), e).firstResult();
@@ -62,7 +93,409 @@ public class ExtensionInstall extends PanacheEntityBase {
         return find(EXTENSION_FIELD,Sort.descending(TIME_FIELD), extension).page(0, 2).list();
     }
 
-    public static Stream<ExtensionInstall> getFrom(Extension extension) {
-        return find(EXTENSION_FIELD, Sort.ascending(TIME_FIELD), extension).stream();
+    /**
+     * Returns the last 2 installs of each of the given extensions, most recent first, keyed by extension id.
+     * Extensions without any installs have no entry.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<Long, List<ExtensionInstall>> getLast2Installs(Collection<Extension> extensions) {
+        Map<Long, List<ExtensionInstall>> lastInstalls = new HashMap<>();
+        if (extensions.isEmpty()) {
+            return lastInstalls;
+        }
+        List<Long> ids = extensions.stream().map(e -> e.id).toList();
+        String query = """
+            select * from ExtensionInstall
+            where id in (
+                select id from (
+                    select id, row_number() over (partition by extension_id order by time desc) as rn
+                    from ExtensionInstall
+                    where extension_id in (:ids)
+                ) as latest
+                where latest.rn <= 2
+            )
+            order by extension_id, time desc
+        """;
+        List<ExtensionInstall> installs = getEntityManager().createNativeQuery(query, ExtensionInstall.class)
+                .setParameter("ids", ids)
+                .getResultList();
+        installs.forEach(ei -> lastInstalls.computeIfAbsent(ei.extension.id, id -> new ArrayList<>(2)).add(ei));
+        return lastInstalls;
+    }
+
+    @RegisterForReflection
+    public static record InstallDto(String version, Instant time, long delta, long installs, long updates,
+                                    long total_installs, long onpremDownloads) {};
+
+    /**
+     * Granularity of an extension history. Coarser resolutions keep the last snapshot of each version
+     * in each period, with the deltas of the period summed up.
+     */
+    public enum Resolution {
+        // Crawls run hourly at most
+        RAW(null, Duration.ofHours(1)), DAILY("day", Duration.ofDays(1)), WEEKLY("week", Duration.ofDays(7)),
+        MONTHLY("month", Duration.ofDays(31));
+
+        private final String unit;
+        private final Duration period;
+
+        Resolution(String unit, Duration period) {
+            this.unit = unit;
+            this.period = period;
+        }
+
+        /**
+         * The <code>date_trunc</code> unit of the periods. It's inlined in SQL, which is safe as it only ever
+         * comes from the enum, never from user input.
+         */
+        String unit() {
+            return unit;
+        }
+
+        /**
+         * Returns the finest resolution with at most <code>maxPoints</code> periods in the given span
+         */
+        static Resolution forSpan(Duration span, int maxPoints) {
+            for (Resolution resolution : values()) {
+                if (span.dividedBy(resolution.period) <= maxPoints) {
+                    return resolution;
+                }
+            }
+            return MONTHLY;
+        }
+    }
+
+    /**
+     * Restricts the installs streamed from an extension history. Any of the bounds may be null.
+     * With a coarser resolution than {@link Resolution#RAW}, the time bounds apply to the last snapshot of each period,
+     * so a period is either streamed whole or not at all.
+     *
+     * @param from the inclusive lower bound of the install times
+     * @param to the exclusive upper bound of the install times
+     * @param version the only version to stream
+     * @param after the exclusive lower bound of the install times, to resume from the last install received
+     * @param limit the max number of installs to stream
+     */
+    public static record StatsFilter(Instant from, Instant to, String version, Instant after, Integer limit) {
+        public static final StatsFilter NONE = new StatsFilter(null, null, null, null, null);
+
+        private String versionCondition() {
+            return version == null ? "" : " and version = :version";
+        }
+
+        private String timeConditions() {
+            StringBuilder conditions = new StringBuilder();
+            if (from != null) {
+                conditions.append(" and time >= :from");
+            }
+            if (to != null) {
+                conditions.append(" and time < :to");
+            }
+            if (after != null) {
+                conditions.append(" and time > :after");
+            }
+            return conditions.toString();
+        }
+
+        <Q extends Query> Q bind(Q query, Collection<Long> extensionIds) {
+            query.setParameter("extensions", extensionIds);
+            if (from != null) {
+                query.setParameter("from", from);
+            }
+            if (to != null) {
+                query.setParameter("to", to);
+            }
+            if (version != null) {
+                query.setParameter("version", version);
+            }
+            if (after != null) {
+                query.setParameter("after", after);
+            }
+            if (limit != null) {
+                query.setMaxResults(limit);
+            }
+            return query;
+        }
+    }
+
+    private static final String STATS_COLUMNS = "extension_id, version, time, delta, installs, updates, total_installs, onpremDownloads";
+    static final String BY_VERSION = "min(time) over (partition by version), version, time";
+    static final String BY_TIME = "time";
+    private static final String BY_EXTENSION = "extension_id, time";
+
+    @RegisterForReflection
+    public static record ExtensionInstallDto(long extensionId, InstallDto install) {};
+
+    /**
+     * Streams the history of an extension without loading entities, ordered by time.
+     */
+    public static Stream<InstallDto> getFrom(Extension extension, Resolution resolution, StatsFilter filter) {
+        return streamStats(extension, resolution, filter, BY_TIME);
+    }
+
+    /**
+     * Streams the history of an extension without loading entities, grouped by version: versions are ordered
+     * by their first appearance, and each version's installs by time.
+     */
+    public static Stream<InstallDto> getFromByVersion(Extension extension, Resolution resolution, StatsFilter filter) {
+        return streamStats(extension, resolution, filter, BY_VERSION);
+    }
+
+    /**
+     * Returns the number of installs {@link #getFrom(Extension, Resolution, StatsFilter)} streams
+     */
+    public static long countFrom(Extension extension, Resolution resolution, StatsFilter filter) {
+        String query = "select count(*) from (" + statsQuery(resolution, filter) + ") as stats";
+        Number count = (Number) filter.bind(getEntityManager().createNativeQuery(query), List.of(extension.id))
+                .setMaxResults(1)
+                .getSingleResult();
+        return filter.limit() == null ? count.longValue() : Math.min(count.longValue(), filter.limit());
+    }
+
+    /**
+     * Picks the finest resolution charting the history of an extension in at most about <code>maxPoints</code> points
+     * per version, from the time bounds of the filter, so long ranges are read from the rollups instead of being
+     * downsampled from the raw history. Ranges without a lower bound start at the first install, and ranges without
+     * an upper bound end now.
+     */
+    public static Resolution getResolution(Extension extension, StatsFilter filter, int maxPoints) {
+        Instant from = filter.from();
+        if (filter.after() != null && (from == null || filter.after().isAfter(from))) {
+            from = filter.after();
+        }
+        if (from == null) {
+            from = getEntityManager().createQuery("select min(time) from ExtensionInstall where extension = ?1", Instant.class)
+                    .setParameter(1, extension)
+                    .getSingleResult();
+            if (from == null) {
+                return Resolution.RAW;
+            }
+        }
+        Instant to = filter.to() == null ? Instant.now() : filter.to();
+        return Resolution.forSpan(Duration.between(from, to), maxPoints);
+    }
+
+    /**
+     * Returns the time of the last install {@link #getFrom(Extension, Resolution, StatsFilter)} streams when it streams
+     * as many installs as the limit of the filter, so the next page can be requested after it, or null otherwise
+     */
+    @SuppressWarnings("unchecked")
+    public static Instant getPageEnd(Extension extension, Resolution resolution, StatsFilter filter) {
+        if (filter.limit() == null) {
+            return null;
+        }
+        String query = statsQuery(resolution, filter) + " order by " + BY_TIME;
+        NativeQuery<Instant> nativeQuery = getEntityManager().createNativeQuery(query).unwrap(NativeQuery.class);
+        List<Instant> times = filter.bind(nativeQuery, List.of(extension.id))
+                .addScalar("time", Instant.class)
+                .setFirstResult(filter.limit() - 1)
+                .setMaxResults(1)
+                .getResultList();
+        return times.isEmpty() ? null : times.get(0);
+    }
+
+    /**
+     * Streams the histories of several extensions in a single query, without loading entities,
+     * ordered by extension id, then by time.
+     */
+    public static Stream<ExtensionInstallDto> getFrom(Collection<Extension> extensions, Resolution resolution, StatsFilter filter) {
+        List<Long> ids = extensions.stream().map(e -> e.id).toList();
+        return streamStats(ids, resolution, filter, BY_EXTENSION, true)
+                .map(row -> new ExtensionInstallDto((Long) row[7], toInstallDto(row)));
+    }
+
+    private static Stream<InstallDto> streamStats(Extension extension, Resolution resolution, StatsFilter filter, String orderBy) {
+        return streamStats(List.of(extension.id), resolution, filter, orderBy, false).map(ExtensionInstall::toInstallDto);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Stream<Object[]> streamStats(Collection<Long> extensionIds, Resolution resolution, StatsFilter filter,
+                                                String orderBy, boolean withExtension) {
+        String query = statsQuery(resolution, filter) + " order by " + orderBy;
+        NativeQuery<Object[]> nativeQuery = getEntityManager().createNativeQuery(query).unwrap(NativeQuery.class);
+        filter.bind(nativeQuery, extensionIds)
+                .addScalar("version", String.class)
+                .addScalar("time", Instant.class)
+                .addScalar("delta", Long.class)
+                .addScalar("installs", Long.class)
+                .addScalar("updates", Long.class)
+                .addScalar("total_installs", Long.class)
+                .addScalar("onpremDownloads", Long.class);
+        if (withExtension) {
+            nativeQuery.addScalar("extension_id", Long.class);
+        }
+        return nativeQuery.setFetchSize(FETCH_SIZE).getResultStream();
+    }
+
+    private static InstallDto toInstallDto(Object[] row) {
+        return new InstallDto((String) row[0], (Instant) row[1], (Long) row[2], (Long) row[3],
+                (Long) row[4], (Long) row[5], (Long) row[6]);
+    }
+
+    private static String statsQuery(Resolution resolution, StatsFilter filter) {
+        // Until the rollups cover the whole history, periods are aggregated from the raw history
+        boolean fromRollups = resolution != Resolution.RAW && RollupBackfill.isCompleted();
+        return statsQuery(resolution, fromRollups, filter);
+    }
+
+    static String statsQuery(Resolution resolution, boolean fromRollups) {
+        return statsQuery(resolution, fromRollups, StatsFilter.NONE);
+    }
+
+    static String statsQuery(Resolution resolution, boolean fromRollups, StatsFilter filter) {
+        return statsQuery(resolution, fromRollups, filter.versionCondition(), filter.timeConditions());
+    }
+
+    private static String statsQuery(Resolution resolution, boolean fromRollups, String versionCondition, String timeConditions) {
+        if (resolution == Resolution.RAW) {
+            return "select " + STATS_COLUMNS + " from ExtensionInstall where extension_id in (:extensions)"
+                    + versionCondition + timeConditions;
+        }
+        if (fromRollups) {
+            return InstallRollup.statsQuery(resolution, STATS_COLUMNS) + versionCondition + timeConditions;
+        }
+        String bucket = "date_trunc('" + resolution.unit() + "', time)";
+        // Periods are filtered on their last snapshot once aggregated, like the rollups are
+        return """
+            select %1$s from (
+                select distinct on (extension_id, version, %2$s) extension_id, version, time,
+                    sum(delta) over (partition by extension_id, version, %2$s)::bigint as delta,
+                    installs, updates, total_installs, onpremDownloads
+                from ExtensionInstall
+                where extension_id in (:extensions)%3$s
+                order by extension_id, version, %2$s, time desc
+            ) as buckets
+            where true%4$s""".formatted(STATS_COLUMNS, bucket, versionCondition, timeConditions);
+    }
+
+    private static final String EXPORT_SELECT = """
+            select e.name as extension, i.version, i.time, i.delta, i.installs, i.updates,
+                i.total_installs as total_installed, i.onpremDownloads
+            from ExtensionInstall i join Extension e on e.id = i.extension_id""";
+    private static final String EXPORT_QUERY = "copy (" + EXPORT_SELECT + ") to stdout with (format csv, header)";
+    private static final int EXPORT_BATCH_SIZE = 10_000;
+
+    /**
+     * Writes the install history of all extensions as CSV, with a header, through PostgreSQL's COPY:
+     * rows are neither sorted nor mapped to entities, and the driver writes them as they arrive.
+     *
+     * @return the number of installs written
+     */
+    public static long exportCsv(OutputStream output) {
+        return getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            try {
+                return copyManager.copyOut(EXPORT_QUERY, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes the install history of all extensions as an Arrow IPC stream, in record batches of up to
+     * {@value #EXPORT_BATCH_SIZE} rows, read through a cursor: rows are neither sorted nor mapped to entities.
+     * Arrow's memory allocator needs <code>--add-opens=java.base/java.nio=ALL-UNNAMED</code>.
+     *
+     * @return the number of installs written
+     */
+    public static long exportArrow(OutputStream output) {
+        return getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+            try (BufferAllocator allocator = new RootAllocator();
+                 Statement statement = connection.createStatement()) {
+                statement.setFetchSize(EXPORT_BATCH_SIZE);
+                JdbcToArrowConfig config = new JdbcToArrowConfigBuilder(allocator, JdbcToArrowUtils.getUtcCalendar())
+                        .setTargetBatchSize(EXPORT_BATCH_SIZE)
+                        .setReuseVectorSchemaRoot(true)
+                        .build();
+                try (ResultSet resultSet = statement.executeQuery(EXPORT_SELECT);
+                     ArrowVectorIterator batches = JdbcToArrow.sqlToArrowVectorIterator(resultSet, config)) {
+                    if (!batches.hasNext()) {
+                        // Still writes the schema
+                        Schema schema = JdbcToArrowUtils.jdbcToArrowSchema(resultSet.getMetaData(), config);
+                        try (VectorSchemaRoot empty = VectorSchemaRoot.create(schema, allocator);
+                             ArrowStreamWriter writer = new ArrowStreamWriter(empty, null, new UnclosedOutputStream(output))) {
+                            writer.start();
+                            writer.end();
+                        }
+                        return 0L;
+                    }
+                    // The same root is refilled with each batch. Both are released before the allocator checks for leaks
+                    try (VectorSchemaRoot batch = batches.next();
+                         ArrowStreamWriter writer = new ArrowStreamWriter(batch, null, new UnclosedOutputStream(output))) {
+                        writer.start();
+                        long rows = 0;
+                        while (true) {
+                            writer.writeBatch();
+                            rows += batch.getRowCount();
+                            if (!batches.hasNext()) {
+                                break;
+                            }
+                            batches.next();
+                        }
+                        writer.end();
+                        return rows;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Lets writers close the stream they write to, without closing the output, which the caller finishes
+     */
+    private static final class UnclosedOutputStream extends FilterOutputStream {
+
+        UnclosedOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Persists new snapshots and flushes them, along with updated ones and the matching {@link LatestInstall}s, at once,
+     * so they're sent as JDBC batches. Then brings the rollups of the periods they fall in up to date.
+     */
+    public static void persistBatch(List<ExtensionInstall> snapshots) {
+        LatestInstall.update(snapshots);
+        persist(snapshots);
+        flush();
+        rollup(snapshots);
+    }
+
+    /**
+     * Same as {@link #persistBatch(List)}, given the existing latest snapshots of their extensions
+     */
+    public static void persistBatch(List<ExtensionInstall> snapshots, Map<Long, LatestInstall> latestInstalls) {
+        LatestInstall.update(snapshots, latestInstalls);
+        persist(snapshots);
+        flush();
+        rollup(snapshots);
+    }
+
+    private static void rollup(List<ExtensionInstall> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = new HashSet<>();
+        Instant since = snapshots.get(0).time;
+        for (ExtensionInstall snapshot : snapshots) {
+            ids.add(snapshot.extension.id);
+            if (snapshot.time.isBefore(since)) {
+                since = snapshot.time;
+            }
+        }
+        InstallRollup.rollup(ids, since);
     }
 }
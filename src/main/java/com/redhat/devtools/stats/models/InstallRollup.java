@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.models;
+
+import com.redhat.devtools.stats.models.ExtensionInstall.Resolution;
+import io.quarkus.hibernate.orm.panache.Panache;
+import jakarta.persistence.Query;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Maintains the <code>ExtensionInstallRollup</code> table: for each extension, resolution, version and period,
+ * the last snapshot of the period, with the deltas of the period summed up, as {@link ExtensionInstall} would compute them
+ * from the raw history.
+ */
+public class InstallRollup {
+
+    private InstallRollup() {
+    }
+
+    /**
+     * Recomputes the rollups of the given extensions, at every resolution, for the periods from the one containing
+     * <code>since</code> onwards, or for their whole history if <code>since</code> is null.
+     */
+    public static void rollup(Collection<Long> extensionIds, Instant since) {
+        if (extensionIds.isEmpty()) {
+            return;
+        }
+        for (Resolution resolution : Resolution.values()) {
+            if (resolution == Resolution.RAW) {
+                continue;
+            }
+            Query query = Panache.getEntityManager().createNativeQuery(rollupQuery(resolution, since != null))
+                    .setParameter("ids", extensionIds);
+            if (since != null) {
+                query.setParameter("since", since);
+            }
+            query.executeUpdate();
+        }
+    }
+
+    /**
+     * Returns the query reading the installs of the given extensions at the given resolution, with the same columns as
+     * {@link ExtensionInstall}'s raw stats query
+     */
+    static String statsQuery(Resolution resolution, String columns) {
+        return "select " + columns + " from ExtensionInstallRollup where extension_id in (:extensions) and resolution = '"
+                + resolution.name() + "'";
+    }
+
+    private static String rollupQuery(Resolution resolution, boolean since) {
+        String bucket = "date_trunc('" + resolution.unit() + "', time)";
+        // An older computation, e.g. from the backfill running along a crawl, never overwrites a newer one
+        return """
+            insert into ExtensionInstallRollup (extension_id, resolution, version, bucket, time, delta,
+                installs, updates, total_installs, onpremDownloads)
+            select distinct on (extension_id, version, %1$s) extension_id, '%2$s', version, %1$s, time,
+                sum(delta) over (partition by extension_id, version, %1$s)::bigint,
+                installs, updates, total_installs, onpremDownloads
+            from ExtensionInstall
+            where extension_id in (:ids) and version is not null %3$s
+            order by extension_id, version, %1$s, time desc
+            on conflict (extension_id, resolution, version, bucket) do update set
+                time = excluded.time, delta = excluded.delta, installs = excluded.installs, updates = excluded.updates,
+                total_installs = excluded.total_installs, onpremDownloads = excluded.onpremDownloads
+            where excluded.time >= ExtensionInstallRollup.time""".formatted(bucket, resolution.name(),
+                since ? "and time >= " + "date_trunc('" + resolution.unit() + "', cast(:since as timestamp with time zone))" : "");
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.models;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * The most recent install snapshot of an extension, maintained by the crawler so that
+ * popularity doesn't need to be computed from the whole install history.
+ */
+@Entity
+public class LatestInstall extends PanacheEntityBase {
+
+    @Id
+    @Column(name = "extension_id")
+    public Long extensionId;
+
+    public long installs;
+    public long total_installs;
+    public String version;
+    public Instant time;
+
+    /**
+     * The extra statistics of the latest snapshot, keyed by name
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    public Map<String, Double> extraStatistics;
+
+    /**
+     * Returns the time of the latest snapshot of an extension, or null if it has none
+     */
+    public static Instant getLastModified(Extension extension) {
+        LatestInstall latest = findById(extension.id);
+        return latest == null ? null : latest.time;
+    }
+
+    /**
+     * Returns the time of the latest snapshot of any of the given extensions, or null if there's none
+     */
+    public static Instant getLastModified(Collection<Extension> extensions) {
+        return getEntityManager().createQuery("select max(time) from LatestInstall where extensionId in ?1", Instant.class)
+                .setParameter(1, extensions.stream().map(e -> e.id).toList())
+                .getSingleResult();
+    }
+
+    /**
+     * Returns the time of the latest snapshot of all active extensions, along with their number and a hash of their
+     * names, display names and icons, so a change of any of them can be told apart
+     */
+    public static ActiveInstalls getActiveInstalls() {
+        Object[] result = (Object[]) getEntityManager().createNativeQuery("""
+                select max(latest.time) as lastModified, count(e.id) as extensions,
+                    md5(string_agg(concat_ws('|', e.name, e.displayName, e.icon), ',' order by e.id)) as metadata
+                from Extension e
+                left join LatestInstall latest on latest.extension_id = e.id
+                where e.active = true
+                """).unwrap(NativeQuery.class)
+                .addScalar("lastModified", Instant.class)
+                .addScalar("extensions", Long.class)
+                .addScalar("metadata", String.class)
+                .getSingleResult();
+        return new ActiveInstalls((Instant) result[0], (Long) result[1], (String) result[2]);
+    }
+
+    public static record ActiveInstalls(Instant lastModified, long extensions, String metadata) {};
+
+    /**
+     * Returns the latest snapshots of the given extensions, keyed by extension id.
+     * Extensions without any installs have no entry.
+     */
+    public static Map<Long, LatestInstall> findByExtensions(Collection<Extension> extensions) {
+        Map<Long, LatestInstall> latestInstalls = new HashMap<>();
+        if (extensions.isEmpty()) {
+            return latestInstalls;
+        }
+        List<Long> ids = extensions.stream().map(e -> e.id).toList();
+        LatestInstall.<LatestInstall>list("extensionId in ?1", ids).forEach(l -> latestInstalls.put(l.extensionId, l));
+        return latestInstalls;
+    }
+
+    /**
+     * Records the given snapshots as the latest ones of their extensions.
+     */
+    public static void update(List<ExtensionInstall> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        update(snapshots, findByExtensions(snapshots.stream().map(ei -> ei.extension).toList()));
+    }
+
+    /**
+     * Records the given snapshots as the latest ones of their extensions, given the existing latest snapshots,
+     * as returned by {@link #findByExtensions(Collection)}.
+     */
+    public static void update(List<ExtensionInstall> snapshots, Map<Long, LatestInstall> latestInstalls) {
+        snapshots.forEach(snapshot -> {
+            LatestInstall latest = latestInstalls.get(snapshot.extension.id);
+            if (latest == null) {
+                latest = new LatestInstall();
+                latest.extensionId = snapshot.extension.id;
+                latest.persist();
+            }
+            latest.installs = snapshot.installs;
+            latest.total_installs = snapshot.total_installs;
+            latest.version = snapshot.version;
+            latest.time = snapshot.time;
+            latest.extraStatistics = snapshot.extraStatistics;
+        });
+    }
+}
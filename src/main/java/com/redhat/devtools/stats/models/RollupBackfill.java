@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.models;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.LockModeType;
+
+import java.util.List;
+
+/**
+ * The progress of the rollups backfill from the existing history. Extensions are backfilled in id order,
+ * so the backfill can resume after the last one processed.
+ */
+@Entity
+public class RollupBackfill extends PanacheEntityBase {
+
+    private static final long ID = 1L;
+
+    // Once completed, the backfill never goes back
+    private static volatile boolean completedCache;
+
+    @Id
+    public Long id;
+    public long lastExtensionId;
+    public boolean completed;
+
+    /**
+     * Returns the backfill progress, locked until the end of the transaction
+     */
+    public static RollupBackfill lock() {
+        return findById(ID, LockModeType.PESSIMISTIC_WRITE);
+    }
+
+    /**
+     * Returns whether the rollups cover the whole history, so they can be read instead of the raw history
+     */
+    public static boolean isCompleted() {
+        if (!completedCache) {
+            RollupBackfill backfill = findById(ID);
+            completedCache = backfill != null && backfill.completed;
+        }
+        return completedCache;
+    }
+
+    /**
+     * Rolls up the history of the next extensions, at most <code>chunkSize</code> of them
+     *
+     * @return the number of extensions processed, 0 once the backfill is completed
+     */
+    public int backfillNext(int chunkSize) {
+        if (completed) {
+            return 0;
+        }
+        List<Long> ids = getEntityManager()
+                .createQuery("select e.id from Extension e where e.id > ?1 order by e.id", Long.class)
+                .setParameter(1, lastExtensionId)
+                .setMaxResults(chunkSize)
+                .getResultList();
+        if (ids.isEmpty()) {
+            completed = true;
+            return 0;
+        }
+        InstallRollup.rollup(ids, null);
+        lastExtensionId = ids.get(ids.size() - 1);
+        return ids.size();
+    }
+}
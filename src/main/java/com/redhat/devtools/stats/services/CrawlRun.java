@@ -0,0 +1,171 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A crawl of all publishers, tracking each publisher's progress. Triggers coalesce into the run in flight.
+ */
+public class CrawlRun {
+
+    public enum State {PENDING, RUNNING, FETCHING, SAVING, COMPLETED, FAILED, SKIPPED}
+
+    private final long id;
+    private final String trigger;
+    private final Instant createdAt = Instant.now();
+    private volatile Instant startedAt;
+    private volatile Instant completedAt;
+    private volatile State state = State.PENDING;
+    private final Map<String, PublisherProgress> publishers = new ConcurrentHashMap<>();
+    private final CompletableFuture<CrawlRun> completion = new CompletableFuture<>();
+
+    CrawlRun(long id, String trigger) {
+        this.id = id;
+        this.trigger = trigger;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return completes once the run is over, exceptionally if it failed as a whole
+     */
+    public CompletableFuture<CrawlRun> getCompletion() {
+        return completion;
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    void started(Iterable<String> publisherNames) {
+        startedAt = Instant.now();
+        publisherNames.forEach(publisher -> publishers.put(publisher, new PublisherProgress()));
+        state = State.RUNNING;
+    }
+
+    PublisherProgress publisher(String publisher) {
+        return publishers.get(publisher);
+    }
+
+    void completed() {
+        finish(State.COMPLETED);
+        completion.complete(this);
+    }
+
+    void skipped() {
+        finish(State.SKIPPED);
+        completion.complete(this);
+    }
+
+    void failed(Throwable error) {
+        finish(State.FAILED);
+        completion.completeExceptionally(error);
+    }
+
+    private void finish(State finalState) {
+        completedAt = Instant.now();
+        state = finalState;
+    }
+
+    /**
+     * @return the publishers whose crawl failed, sorted by name
+     */
+    public Set<String> getFailedPublishers() {
+        Set<String> failed = new TreeSet<>();
+        publishers.forEach((publisher, progress) -> {
+            if (progress.state == State.FAILED) {
+                failed.add(publisher);
+            }
+        });
+        return failed;
+    }
+
+    public Status getStatus() {
+        Map<String, PublisherStatus> publisherStatuses = new LinkedHashMap<>();
+        publishers.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> publisherStatuses.put(entry.getKey(), entry.getValue().getStatus()));
+        int changed = publisherStatuses.values().stream().mapToInt(PublisherStatus::changed).sum();
+        int skipped = publisherStatuses.values().stream().mapToInt(PublisherStatus::skipped).sum();
+        Instant end = completedAt == null ? Instant.now() : completedAt;
+        Long durationMs = startedAt == null ? null : Duration.between(startedAt, end).toMillis();
+        return new Status(id, trigger, state, createdAt, startedAt, completedAt, durationMs, changed, skipped, publisherStatuses);
+    }
+
+    @RegisterForReflection
+    public record Status(long id, String trigger, State state, Instant createdAt, Instant startedAt, Instant completedAt,
+                         Long durationMs, int changed, int skipped, Map<String, PublisherStatus> publishers) {}
+
+    /**
+     * @param changed the number of extensions with a new snapshot
+     * @param skipped the number of extensions left untouched, as nothing changed since their latest snapshot
+     */
+    @RegisterForReflection
+    public record PublisherStatus(State state, Long fetchMs, Long saveMs, int changed, int skipped, String error) {}
+
+    /**
+     * The progress of a publisher within a run, updated from the crawl executor
+     */
+    static class PublisherProgress {
+        private volatile State state = State.PENDING;
+        private volatile long fetchStart;
+        private volatile Long fetchMs;
+        private volatile long saveStart;
+        private volatile Long saveMs;
+        private volatile int changed;
+        private volatile int skipped;
+        private volatile String error;
+
+        void fetching() {
+            fetchStart = System.currentTimeMillis();
+            state = State.FETCHING;
+        }
+
+        void saving() {
+            saveStart = System.currentTimeMillis();
+            fetchMs = saveStart - fetchStart;
+            state = State.SAVING;
+        }
+
+        void completed(int changedExtensions, int skippedExtensions) {
+            saveMs = System.currentTimeMillis() - saveStart;
+            changed = changedExtensions;
+            skipped = skippedExtensions;
+            state = State.COMPLETED;
+        }
+
+        void failed(Throwable cause) {
+            error = String.valueOf(cause.getMessage());
+            state = State.FAILED;
+        }
+
+        PublisherStatus getStatus() {
+            return new PublisherStatus(state, fetchMs, saveMs, changed, skipped, error);
+        }
+    }
+}
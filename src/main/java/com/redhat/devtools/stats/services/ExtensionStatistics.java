@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The statistics of an extension tracked by a {@link StatisticsExtractor}. Counters missing from the marketplace are 0,
+ * extra statistics missing from the marketplace are NaN.
+ */
+@RegisterForReflection
+public final class ExtensionStatistics {
+
+    long install;
+    long updateCount;
+    long onpremDownloads;
+    final double[] extras;
+    private final List<String> extraNames;
+
+    ExtensionStatistics(List<String> extraNames) {
+        this.extraNames = extraNames;
+        this.extras = new double[extraNames.size()];
+        Arrays.fill(extras, Double.NaN);
+    }
+
+    public long install() {
+        return install;
+    }
+
+    public long updateCount() {
+        return updateCount;
+    }
+
+    public long onpremDownloads() {
+        return onpremDownloads;
+    }
+
+    /**
+     * Returns the extra statistics found in the marketplace, keyed by name, or null if there are none
+     */
+    public Map<String, Double> extras() {
+        Map<String, Double> values = null;
+        for (int i = 0; i < extras.length; i++) {
+            if (!Double.isNaN(extras[i])) {
+                if (values == null) {
+                    values = new LinkedHashMap<>();
+                }
+                values.put(extraNames.get(i), extras[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Serializes the statistics as the marketplace lists them, <code>[{"statisticName": name, "value": value}]</code>,
+     * limited to the tracked ones
+     */
+    @JsonValue
+    List<Map<String, Object>> toList() {
+        List<Map<String, Object>> values = new ArrayList<>(3 + extras.length);
+        values.add(statistic(StatisticsExtractor.INSTALL, install));
+        values.add(statistic(StatisticsExtractor.UPDATE_COUNT, updateCount));
+        values.add(statistic(StatisticsExtractor.ONPREM_DOWNLOADS, onpremDownloads));
+        Map<String, Double> extraValues = extras();
+        if (extraValues != null) {
+            extraValues.forEach((name, value) -> values.add(statistic(name, value)));
+        }
+        return values;
+    }
+
+    private static Map<String, Object> statistic(String name, Number value) {
+        Map<String, Object> statistic = new LinkedHashMap<>(2);
+        statistic.put("statisticName", name);
+        statistic.put("value", value);
+        return statistic;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * The parts of a marketplace extension we use
+ *
+ * @param icon the source of the default icon, may be null
+ * @param version the latest version
+ * @param statistics the tracked statistics
+ */
+@RegisterForReflection
+public record MarketPlaceExtension(String publisherName, String extensionName, String displayName, String icon,
+                                   String version, ExtensionStatistics statistics) {
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the extensions of a publisher, as found in the marketplace, indexed by extension name
+ *
+ * @param totalCount the number of extensions matching the query, across all pages
+ */
+public record MarketPlacePublisher(int totalCount, Map<String, MarketPlaceExtension> extensionsByName) {
+
+    /**
+     * Indexes the given extensions, in order. If an extension shows up more than once, the first occurrence is kept.
+     */
+    public static MarketPlacePublisher of(int totalCount, List<MarketPlaceExtension> extensions) {
+        Map<String, MarketPlaceExtension> extensionsByName = new LinkedHashMap<>(Math.max(16, extensions.size() * 4 / 3 + 1));
+        extensions.forEach(extension -> extensionsByName.putIfAbsent(extension.extensionName(), extension));
+        return new MarketPlacePublisher(totalCount, Collections.unmodifiableMap(extensionsByName));
+    }
+
+    public Collection<MarketPlaceExtension> extensions() {
+        return extensionsByName.values();
+    }
+
+    /**
+     * Returns the extension with the given name, without its publisher part, or null if there's none
+     */
+    public MarketPlaceExtension getExtension(String extensionName) {
+        return extensionsByName.get(extensionName);
+    }
+}
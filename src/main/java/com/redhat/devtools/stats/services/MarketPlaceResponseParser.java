@@ -0,0 +1,202 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads gallery extensionquery responses as a stream of tokens, keeping only what we use. Everything else
+ * (properties, other versions, files, categories, ...) is skipped without being materialized.
+ */
+public class MarketPlaceResponseParser {
+
+    private MarketPlaceResponseParser() {
+    }
+
+    public static MarketPlacePublisher parse(JsonFactory factory, InputStream input, StatisticsExtractor statisticsExtractor) throws IOException {
+        try (JsonParser parser = factory.createParser(input)) {
+            parser.nextToken();
+            return parseResponse(parser, statisticsExtractor);
+        }
+    }
+
+    private static MarketPlacePublisher parseResponse(JsonParser parser, StatisticsExtractor statisticsExtractor) throws IOException {
+        List<MarketPlaceExtension> extensions = new ArrayList<>();
+        int[] totalCount = {-1};
+        forEachField(parser, field -> {
+            if ("results".equals(field)) {
+                // A single query is sent, so only the first result is relevant
+                forEachElement(parser, i -> {
+                    if (i == 0) {
+                        totalCount[0] = parseResult(parser, statisticsExtractor, extensions);
+                    } else {
+                        parser.skipChildren();
+                    }
+                });
+            } else {
+                parser.skipChildren();
+            }
+        });
+        return MarketPlacePublisher.of(totalCount[0] < 0 ? extensions.size() : totalCount[0], extensions);
+    }
+
+    /**
+     * @return the total count found in the result metadata, or -1
+     */
+    private static int parseResult(JsonParser parser, StatisticsExtractor statisticsExtractor,
+                                   List<MarketPlaceExtension> extensions) throws IOException {
+        int[] totalCount = {-1};
+        forEachField(parser, field -> {
+            switch (field) {
+                case "extensions" -> forEachElement(parser, i -> extensions.add(parseExtension(parser, statisticsExtractor)));
+                case "resultMetadata" -> forEachElement(parser, i -> {
+                    String[] metadataType = {null};
+                    forEachField(parser, metadataField -> {
+                        switch (metadataField) {
+                            case "metadataType" -> metadataType[0] = parser.getValueAsString();
+                            // metadataType comes first in gallery responses
+                            case "metadataItems" -> {
+                                if ("ResultCount".equals(metadataType[0])) {
+                                    forEachElement(parser, j -> totalCount[0] = Math.max(totalCount[0], parseTotalCount(parser)));
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                            default -> parser.skipChildren();
+                        }
+                    });
+                });
+                default -> parser.skipChildren();
+            }
+        });
+        return totalCount[0];
+    }
+
+    private static int parseTotalCount(JsonParser parser) throws IOException {
+        String[] name = {null};
+        int[] count = {-1};
+        forEachField(parser, field -> {
+            switch (field) {
+                case "name" -> name[0] = parser.getValueAsString();
+                case "count" -> count[0] = parser.getValueAsInt(-1);
+                default -> parser.skipChildren();
+            }
+        });
+        return "TotalCount".equals(name[0]) ? count[0] : -1;
+    }
+
+    private static MarketPlaceExtension parseExtension(JsonParser parser, StatisticsExtractor statisticsExtractor) throws IOException {
+        String[] values = new String[5]; // publisherName, extensionName, displayName, icon, version
+        ExtensionStatistics[] statistics = {null};
+        forEachField(parser, field -> {
+            switch (field) {
+                case "publisher" -> forEachField(parser, publisherField -> {
+                    if ("publisherName".equals(publisherField)) {
+                        values[0] = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                });
+                case "extensionName" -> values[1] = parser.getValueAsString();
+                case "displayName" -> values[2] = parser.getValueAsString();
+                // Versions are sorted latest first
+                case "versions" -> forEachElement(parser, i -> {
+                    if (i == 0) {
+                        parseLatestVersion(parser, values);
+                    } else {
+                        parser.skipChildren();
+                    }
+                });
+                case "statistics" -> statistics[0] = statisticsExtractor.extract(parser);
+                default -> parser.skipChildren();
+            }
+        });
+        return new MarketPlaceExtension(values[0], values[1], values[2], values[3],
+                values[4] == null ? "unknown" : values[4],
+                statistics[0] == null ? statisticsExtractor.empty() : statistics[0]);
+    }
+
+    private static void parseLatestVersion(JsonParser parser, String[] values) throws IOException {
+        forEachField(parser, field -> {
+            switch (field) {
+                case "version" -> values[4] = parser.getValueAsString();
+                // Only the default icon is requested, so it's the first file
+                case "files" -> forEachElement(parser, i -> {
+                    if (i == 0) {
+                        forEachField(parser, fileField -> {
+                            if ("source".equals(fileField)) {
+                                values[3] = parser.getValueAsString();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        });
+                    } else {
+                        parser.skipChildren();
+                    }
+                });
+                default -> parser.skipChildren();
+            }
+        });
+    }
+
+    /**
+     * Calls the handler with the parser on the value of each field of the current object, which the handler must consume.
+     * Skips the current value if it's not an object.
+     */
+    private static void forEachField(JsonParser parser, FieldHandler handler) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            handler.handle(field);
+        }
+    }
+
+    /**
+     * Calls the handler with the parser on each element of the current array, which the handler must consume.
+     * Skips the current value if it's not an array.
+     */
+    private static void forEachElement(JsonParser parser, ElementHandler handler) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            handler.handle(index++);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldHandler {
+        void handle(String field) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ElementHandler {
+        void handle(int index) throws IOException;
+    }
+}
@@ -17,18 +17,37 @@ package com.redhat.devtools.stats.services;
 
 import io.vertx.core.json.JsonObject;
 import jakarta.ws.rs.POST;
+import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.core.MediaType;
+import org.eclipse.microprofile.faulttolerance.CircuitBreaker;
+import org.eclipse.microprofile.faulttolerance.Retry;
 import org.eclipse.microprofile.rest.client.annotation.ClientHeaderParam;
+import org.eclipse.microprofile.rest.client.annotation.RegisterProvider;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 
+import java.io.InputStream;
+import java.time.temporal.ChronoUnit;
+
 @RestClient
 @RegisterRestClient(configKey="marketplace-api")
+@RegisterProvider(MarketPlaceThrottle.class)
+@RegisterProvider(MarketPlaceExceptionMapper.class)
 public interface MarketPlaceRestClient {
 
+    /**
+     * Timeouts, 429 and 5xx responses are retried with jittered delays, while the throttle honors Retry-After.
+     * Once most recent attempts have failed, the circuit opens and requests fail fast for a while.
+     * Both can be tuned with the MicroProfile Fault Tolerance properties, e.g.
+     * <code>com.redhat.devtools.stats.services.MarketPlaceRestClient/getPublisherData/Retry/maxRetries</code>
+     */
+    @Retry(maxRetries = 3, delay = 1, delayUnit = ChronoUnit.SECONDS, jitter = 500,
+            retryOn = {MarketPlaceUnavailableException.class, ProcessingException.class})
+    @CircuitBreaker(requestVolumeThreshold = 10, failureRatio = 0.5, delay = 30, delayUnit = ChronoUnit.SECONDS,
+            failOn = {MarketPlaceUnavailableException.class, ProcessingException.class})
     @POST
     @ClientHeaderParam(name = "Content-Type", value = MediaType.APPLICATION_JSON)
     @ClientHeaderParam(name = "excludeUrls", value="true")
-    JsonObject getPublisherData(JsonObject request);
+    InputStream getPublisherData(JsonObject request);
 
 }
@@ -15,39 +15,204 @@
  */
 package com.redhat.devtools.stats.services;
 
-import com.redhat.devtools.stats.utils.JsonUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.quarkus.cache.CacheResult;
+import io.quarkus.logging.Log;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
 @ApplicationScoped
 public class MarketPlaceService {
 
     @RestClient
     MarketPlaceRestClient marketPlaceClient;
 
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    @ConfigProperty(name = "marketplace-api.page-size", defaultValue = "200")
+    int pageSize;
+
+    @Inject
+    @ConfigProperty(name = "marketplace-api.page-concurrency", defaultValue = "4")
+    int pageConcurrency;
+
+    @Inject
+    @ConfigProperty(name = "marketplace-api.extra-statistics")
+    Optional<List<String>> extraStatistics;
+
+    @Inject
+    @ConfigProperty(name = "marketplace-api.stale.max-size", defaultValue = "1000")
+    long staleMaxSize;
+
+    private ExecutorService pageExecutor;
+    private StatisticsExtractor statisticsExtractor;
+
+    /**
+     * The last publisher snapshots fetched successfully, served while the marketplace is unavailable
+     */
+    private Cache<String, MarketPlacePublisher> lastGoodPublishers;
+
+    @PostConstruct
+    void init() {
+        pageExecutor = Executors.newFixedThreadPool(pageConcurrency);
+        statisticsExtractor = new StatisticsExtractor(extraStatistics.orElse(List.of()));
+        lastGoodPublishers = Caffeine.newBuilder().maximumSize(staleMaxSize).build();
+    }
 
+    @PreDestroy
+    void shutdown() {
+        pageExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns all the extensions of a publisher, cached for a few seconds.
+     * See {@link #fetchPublisherData(String)}.
+     */
     @CacheResult(cacheName = "marketplace-api")
-    public JsonObject getPublisherData(String publisherId) {
-        JsonObject request = createRequest(publisherId);
-        return marketPlaceClient.getPublisherData(request);
+    public MarketPlacePublisher getPublisherData(String publisherId) {
+        return fetchPublisherData(publisherId);
+    }
+
+    /**
+     * Fetches all the extensions of a publisher. When the marketplace can't be reached, even after retries,
+     * returns the last snapshot of the publisher fetched successfully, if any.
+     */
+    public MarketPlacePublisher fetchPublisherData(String publisherId) {
+        try {
+            MarketPlacePublisher publisher = fetchPublisher(publisherId);
+            lastGoodPublishers.put(publisherId, publisher);
+            return publisher;
+        } catch (RuntimeException e) {
+            MarketPlacePublisher stale = lastGoodPublishers.getIfPresent(publisherId);
+            if (stale == null) {
+                throw e;
+            }
+            Log.warnv("Serving the last snapshot of {0}, the marketplace is unavailable: {1}", publisherId, e.getMessage());
+            return stale;
+        }
+    }
+
+    /**
+     * The first page tells how many extensions there are, the remaining pages are then fetched concurrently.
+     * Fails if any page can't be fetched, rather than returning a truncated publisher.
+     */
+    private MarketPlacePublisher fetchPublisher(String publisherId) {
+        MarketPlacePublisher firstPage = getPage(publisherId, 1);
+        int totalCount = firstPage.totalCount();
+        int pages = (totalCount + pageSize - 1) / pageSize;
+        if (pages <= 1) {
+            return firstPage;
+        }
+        List<CompletableFuture<MarketPlacePublisher>> nextPages = IntStream.rangeClosed(2, pages)
+                .mapToObj(page -> CompletableFuture.supplyAsync(() -> getPage(publisherId, page), pageExecutor))
+                .toList();
+        List<MarketPlaceExtension> extensions = new ArrayList<>(totalCount);
+        extensions.addAll(firstPage.extensions());
+        nextPages.forEach(nextPage -> extensions.addAll(nextPage.join().extensions()));
+        // Extensions may move across pages while they're fetched, the first occurrence is kept
+        MarketPlacePublisher publisher = MarketPlacePublisher.of(totalCount, extensions);
+        Log.infov("Fetched {0} extensions of {1} in {2} pages", publisher.extensionsByName().size(), publisherId, pages);
+        return publisher;
+    }
+
+    /**
+     * Fetches all the extensions of a publisher as the marketplace returns them, keyed by extension name,
+     * to be passed through as is. Pages are fetched like {@link #fetchPublisherData(String)} does,
+     * but they're fully decoded.
+     */
+    public Map<String, JsonObject> fetchPublisherJson(String publisherId) {
+        JsonObject firstPage = getJsonPage(publisherId, 1);
+        int totalCount = getTotalCount(firstPage);
+        int pages = (totalCount + pageSize - 1) / pageSize;
+        List<CompletableFuture<JsonObject>> nextPages = IntStream.rangeClosed(2, pages)
+                .mapToObj(page -> CompletableFuture.supplyAsync(() -> getJsonPage(publisherId, page), pageExecutor))
+                .toList();
+        Map<String, JsonObject> extensions = new LinkedHashMap<>();
+        addExtensions(firstPage, extensions);
+        nextPages.forEach(nextPage -> addExtensions(nextPage.join(), extensions));
+        return extensions;
+    }
+
+    private JsonObject getJsonPage(String publisherId, int pageNumber) {
+        try (InputStream response = marketPlaceClient.getPublisherData(createRequest(publisherId, pageNumber))) {
+            return new JsonObject(Buffer.buffer(response.readAllBytes()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JsonArray getResults(JsonObject page) {
+        return page.getJsonArray("results", new JsonArray());
+    }
+
+    private static int getTotalCount(JsonObject page) {
+        int totalCount = 0;
+        for (Object result : getResults(page)) {
+            JsonArray metadata = ((JsonObject) result).getJsonArray("resultMetadata", new JsonArray());
+            for (Object item : metadata) {
+                if ("ResultCount".equals(((JsonObject) item).getString("metadataType"))) {
+                    for (Object count : ((JsonObject) item).getJsonArray("metadataItems", new JsonArray())) {
+                        if ("TotalCount".equals(((JsonObject) count).getString("name"))) {
+                            totalCount = Math.max(totalCount, ((JsonObject) count).getInteger("count", 0));
+                        }
+                    }
+                }
+            }
+        }
+        return totalCount;
+    }
+
+    private static void addExtensions(JsonObject page, Map<String, JsonObject> extensions) {
+        for (Object result : getResults(page)) {
+            // Extensions may move across pages while they're fetched, the first occurrence is kept
+            ((JsonObject) result).getJsonArray("extensions", new JsonArray()).forEach(extension ->
+                    extensions.putIfAbsent(((JsonObject) extension).getString("extensionName"), (JsonObject) extension));
+        }
+    }
+
+    private MarketPlacePublisher getPage(String publisherId, int pageNumber) {
+        try (InputStream response = marketPlaceClient.getPublisherData(createRequest(publisherId, pageNumber))) {
+            return MarketPlaceResponseParser.parse(objectMapper.getFactory(), response, statisticsExtractor);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    public JsonObject getExtensionData(String name) {
+    public MarketPlaceExtension getExtensionData(String name) {
         String[] parts = name.split("\\.");
         if (parts.length < 2) {
             return null;
         }
         String publisherId = parts[0];
         String extensionName = parts[1];
-        JsonObject publisherJson = getPublisherData(publisherId);
-        JsonObject extensionData = JsonUtils.findExtension(extensionName, publisherJson);
-        return extensionData;
+        return getPublisherData(publisherId).getExtension(extensionName);
     }
 
-    private JsonObject createRequest(String name) {
+    private JsonObject createRequest(String name, int pageNumber) {
         JsonObject body = new JsonObject();
         JsonArray criteria = new JsonArray();
         criteria.add(new JsonObject().put("filterType", 18).put("value", name));
@@ -63,8 +228,8 @@ public class MarketPlaceService {
         body.put("filters", new JsonArray().add(
                 new JsonObject().put("criteria", criteria)
                         .put("sortBy", 4)
-                        .put("pageSize", 200)
-                        .put("pageNumber", 1)));
+                        .put("pageSize", pageSize)
+                        .put("pageNumber", pageNumber)));
         body.put("assetTypes", new JsonArray().add("Microsoft.VisualStudio.Services.Icons.Default"));
         body.put("flags", 866);
         return body;
@@ -17,13 +17,16 @@ package com.redhat.devtools.stats.services;
 
 import com.redhat.devtools.stats.models.Extension;
 import com.redhat.devtools.stats.models.ExtensionInstall;
-import io.quarkus.cache.CacheInvalidate;
+import com.redhat.devtools.stats.models.LatestInstall;
+import io.quarkus.cache.CacheInvalidateAll;
 import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.runtime.StartupEvent;
 import io.quarkus.scheduler.Scheduled;
-import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
@@ -33,12 +36,20 @@ import org.eclipse.microprofile.config.inject.ConfigProperty;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.redhat.devtools.stats.utils.JsonUtils.*;
 
 @ApplicationScoped
 public class MarketPlaceStatisticsWatcher {
 
+    public static final String CRAWL_JOB = "marketplace-crawl";
+    private static final int MAX_RECENT_RUNS = 20;
+
     @Inject
     @ConfigProperty(name = "watched.publishers")
     Set<String> watchedPublishers;
@@ -48,67 +59,260 @@ public class MarketPlaceStatisticsWatcher {
     @ConfigProperty(name = "read.only")
     Boolean readOnly;
 
+    @Inject
+    @ConfigProperty(name = "marketplace-api.crawl.concurrency", defaultValue = "4")
+    int crawlConcurrency;
+
+    @Inject
+    Event<CrawlCompleted> crawlCompleted;
+
     private final MarketPlaceService service;
 
+    private ExecutorService crawlExecutor;
+    private ExecutorService crawlTrigger;
+    private final CompletableFuture<Void> initialCrawl = new CompletableFuture<>();
+    private final AtomicLong crawlIds = new AtomicLong();
+    // Guarded by this
+    private CrawlRun currentRun;
+    private final Map<Long, CrawlRun> recentRuns = Collections.synchronizedMap(new LinkedHashMap<Long, CrawlRun>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CrawlRun> eldest) {
+            return size() > MAX_RECENT_RUNS;
+        }
+    });
+
     MarketPlaceStatisticsWatcher(MarketPlaceService service){
         this.service = service;
     }
 
+    @PostConstruct
+    void init() {
+        crawlExecutor = Executors.newFixedThreadPool(crawlConcurrency);
+        crawlTrigger = Executors.newSingleThreadExecutor();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        crawlTrigger.shutdownNow();
+        crawlExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs the initial crawl in the background, so the application starts serving what's already in the database
+     * without waiting for the marketplace.
+     */
     void onStart(@Observes StartupEvent ignoredStartup) {
-        crawl();
+        trigger("startup").getCompletion().whenComplete((run, error) -> {
+            if (error != null) {
+                Log.error("Initial crawl failed", error);
+                initialCrawl.completeExceptionally(error);
+                return;
+            }
+            Set<String> failedPublishers = run.getFailedPublishers();
+            if (failedPublishers.isEmpty()) {
+                initialCrawl.complete(null);
+            } else {
+                // The other publishers are up to date, but these ones only have what previous runs stored
+                initialCrawl.completeExceptionally(new IllegalStateException("Failed to crawl " + failedPublishers));
+            }
+        });
     }
 
-    @Scheduled(cron = "{marketplace-api.crawl.cron}")
-    @Transactional
-    public void crawl() {
-        if (Boolean.TRUE.equals(readOnly)) {
-            Log.info("Database is read-only, skipping updates");
-            return;
+    /**
+     * @return the initial crawl, completed once its installs are committed, exceptionally if any publisher failed
+     */
+    public CompletableFuture<Void> getInitialCrawl() {
+        return initialCrawl;
+    }
+
+    /**
+     * Starts a crawl in the background, unless one is already in flight, in which case the trigger coalesces into it.
+     *
+     * @param trigger what triggered the crawl, for tracking
+     * @return the crawl run in flight
+     */
+    public synchronized CrawlRun trigger(String trigger) {
+        if (currentRun != null && !currentRun.isDone()) {
+            Log.infov("Crawl {0} is in flight, coalescing {1} trigger", currentRun.getId(), trigger);
+            return currentRun;
         }
-        watchedPublishers.forEach(this::updatePublisherExtensions);
-        updateInstalls();
-    }
-
-    private void updatePublisherExtensions(String publisher) {
-        JsonObject publisherJson = service.getPublisherData(publisher);
-        // Extensions found in the marketplace
-        JsonArray newExtensions = getExtensions(publisherJson);
-
-        // Existing extensions
-        List<Extension> existingExtensions = new ArrayList<>(Extension.findAll().list());
-        //Add new extensions to DB
-        int newOnes = newExtensions.size();
-        if (newOnes > 0) {
-            Log.infov("Adding/updating {0} extensions from {1}", newOnes, publisher);
-            addExtensions(newExtensions, existingExtensions);
+        CrawlRun run = new CrawlRun(crawlIds.incrementAndGet(), trigger);
+        currentRun = run;
+        recentRuns.put(run.getId(), run);
+        crawlTrigger.execute(() -> crawl(run));
+        return run;
+    }
+
+    /**
+     * @return one of the recent crawl runs, or null if it's unknown
+     */
+    public CrawlRun getRun(long id) {
+        return recentRuns.get(id);
+    }
+
+    /**
+     * Triggers a crawl and waits for it to complete.
+     */
+    @Scheduled(identity = CRAWL_JOB, cron = "{marketplace-api.crawl.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    public void crawl() {
+        trigger("schedule").getCompletion().join();
+    }
+
+    /**
+     * Crawls all publishers concurrently. Each publisher is fetched and transformed on the crawl executor,
+     * then saved in its own short transaction, so a slow or failing publisher doesn't hold back or roll back the others.
+     */
+    private void crawl(CrawlRun run) {
+        try {
+            if (Boolean.TRUE.equals(readOnly)) {
+                Log.info("Database is read-only, skipping updates");
+                run.skipped();
+                return;
+            }
+            long start = System.currentTimeMillis();
+            Map<String, Extension> existingExtensions = getExistingExtensions();
+            Set<String> publishers = getCrawledPublishers(existingExtensions.values());
+            run.started(publishers);
+            CompletableFuture<?>[] crawls = publishers.stream()
+                    .map(publisher -> {
+                        CrawlRun.PublisherProgress progress = run.publisher(publisher);
+                        return CompletableFuture
+                                .supplyAsync(() -> {
+                                    progress.fetching();
+                                    return fetch(publisher, existingExtensions);
+                                }, crawlExecutor)
+                                .thenAccept(crawl -> {
+                                    progress.saving();
+                                    InstallChanges changes = save(crawl);
+                                    progress.completed(changes.changed(), changes.skipped());
+                                })
+                                .exceptionally(error -> {
+                                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                                    Log.errorv(cause, "Failed to crawl {0}", publisher);
+                                    progress.failed(cause);
+                                    return null;
+                                });
+                    })
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(crawls).join();
+            CrawlRun.Status status = run.getStatus();
+            Log.infov("Crawl {0} went through {1} publishers in {2} ms: {3} changed, {4} unchanged extensions skipped",
+                    run.getId(), publishers.size(), System.currentTimeMillis() - start, status.changed(), status.skipped());
+            crawlCompleted.fire(new CrawlCompleted(Instant.now()));
+            run.completed();
+        } catch (RuntimeException | Error e) {
+            // Errors too, or the run would stay in flight for good, and every later trigger would join it
+            Log.errorv(e, "Crawl {0} failed", run.getId());
+            run.failed(e);
+            if (e instanceof Error error) {
+                throw error;
+            }
         }
     }
 
-    private boolean changed(Extension oldOne, Extension newOne) {
-        return !Objects.equals(oldOne.displayName, newOne.displayName) || !Objects.equals(oldOne.icon, newOne.icon);
+    /**
+     * Loads all extensions once per crawl, keyed by name. They're detached, and only read to diff against the marketplace.
+     */
+    private Map<String, Extension> getExistingExtensions() {
+        List<Extension> extensions = QuarkusTransaction.requiringNew().call(() -> Extension.<Extension>listAll());
+        Map<String, Extension> existingExtensions = new HashMap<>(extensions.size() * 4 / 3 + 1);
+        extensions.forEach(extension -> existingExtensions.put(extension.name, extension));
+        return existingExtensions;
     }
 
-    private void addExtensions(JsonArray newExtensions, List<Extension> existingExtensions) {
-        newExtensions.stream()
-            .map(ext -> marketPlaceToExtension((JsonObject)ext))
-            .forEach(ext -> createOrUpdate(ext, existingExtensions));
+    /**
+     * @return the watched publishers, plus the publishers of extensions that were added individually
+     */
+    private Set<String> getCrawledPublishers(Collection<Extension> existingExtensions) {
+        Set<String> publishers = new LinkedHashSet<>(watchedPublishers);
+        existingExtensions.forEach(extension -> {
+            String publisher = getPublisherName(extension.name);
+            if (extension.active && publisher != null) {
+                publishers.add(publisher);
+            }
+        });
+        return publishers;
+    }
+
+    /**
+     * Fetches a publisher's data from the marketplace and diffs it against the existing extensions,
+     * without touching the database.
+     */
+    private PublisherCrawl fetch(String publisher, Map<String, Extension> existingExtensions) {
+        boolean watched = watchedPublishers.contains(publisher);
+        MarketPlacePublisher data = service.getPublisherData(publisher);
+        return new PublisherCrawl(publisher, watched, data, diff(publisher, watched, data, existingExtensions));
     }
 
-    private void createOrUpdate(Extension extension, List<Extension> existingExtensions) {
-        Optional<Extension> maybeExtension = existingExtensions.stream().filter(e -> Objects.equals(e.name, extension.name)).findFirst();
-        if (maybeExtension.isEmpty()) {
-            Log.infov("{0} is new, adding...", extension.name);
-            extension.persist();
-            return;
+    /**
+     * Extensions of a watched publisher that are new or changed in the marketplace are to be inserted or updated.
+     * Inactive extensions are updated but stay inactive, as they may have been deactivated by hand.
+     * Active extensions of any crawled publisher that vanished from the marketplace are to be deactivated.
+     */
+    private ExtensionChanges diff(String publisher, boolean watched, MarketPlacePublisher data, Map<String, Extension> existingExtensions) {
+        List<Extension> inserts = new ArrayList<>();
+        Map<Long, Extension> updates = new HashMap<>();
+        if (watched) {
+            data.extensions().forEach(extensionData -> {
+                Extension extension = marketPlaceToExtension(extensionData);
+                Extension oldOne = existingExtensions.get(extension.name);
+                if (oldOne == null) {
+                    inserts.add(extension);
+                } else if (changed(oldOne, extension)) {
+                    updates.put(oldOne.id, extension);
+                }
+            });
         }
-        Extension oldOne = maybeExtension.get();
-        if (changed(extension, oldOne)) {
-            Log.infov("{0} changed, updating...", extension.name);
-            oldOne.displayName = extension.displayName;
-            oldOne.icon = extension.icon;
-            oldOne.persist();
+        List<Long> deactivations = new ArrayList<>();
+        // Only a complete snapshot tells vanished extensions apart from ones missed by the fetch, e.g. an empty response
+        // or an extension moving across pages while they're fetched
+        if (!data.extensionsByName().isEmpty() && data.extensionsByName().size() == data.totalCount()) {
+            String prefix = publisher + ".";
+            existingExtensions.values().forEach(extension -> {
+                if (extension.active && extension.name.startsWith(prefix)
+                        && data.getExtension(getExtensionName(extension.name)) == null) {
+                    deactivations.add(extension.id);
+                }
+            });
         }
-        existingExtensions.remove(oldOne);
+        return new ExtensionChanges(inserts, updates, deactivations);
+    }
+
+    private InstallChanges save(PublisherCrawl crawl) {
+        long start = System.currentTimeMillis();
+        InstallChanges changes = QuarkusTransaction.requiringNew().call(() -> {
+            updatePublisherExtensions(crawl);
+            return updateInstalls(crawl);
+        });
+        Log.infov("Saved {0} in {1} ms: {2} changed, {3} unchanged extensions skipped", crawl.publisher(),
+                System.currentTimeMillis() - start, changes.changed(), changes.skipped());
+        return changes;
+    }
+
+    private void updatePublisherExtensions(PublisherCrawl crawl) {
+        ExtensionChanges changes = crawl.changes();
+        if (!changes.inserts().isEmpty()) {
+            Log.infov("Adding {0} extensions from {1}: {2}", changes.inserts().size(), crawl.publisher(), changes.inserts());
+            Extension.persist(changes.inserts());
+        }
+        if (!changes.updates().isEmpty()) {
+            List<Extension> changedExtensions = Extension.findByIds(changes.updates().keySet());
+            Log.infov("Updating {0} extensions from {1}: {2}", changedExtensions.size(), crawl.publisher(), changedExtensions);
+            // Changes are flushed as a batch, along with the new installs
+            changedExtensions.forEach(oldOne -> {
+                Extension extension = changes.updates().get(oldOne.id);
+                oldOne.displayName = extension.displayName;
+                oldOne.icon = extension.icon;
+            });
+        }
+        if (!changes.deactivations().isEmpty()) {
+            int deactivated = Extension.deactivate(changes.deactivations());
+            Log.infov("Deactivated {0} extensions of {1} no longer found in the marketplace", deactivated, crawl.publisher());
+        }
+    }
+
+    private boolean changed(Extension oldOne, Extension newOne) {
+        return !Objects.equals(oldOne.displayName, newOne.displayName) || !Objects.equals(oldOne.icon, newOne.icon);
     }
 
     @Transactional
@@ -117,43 +321,73 @@ public class MarketPlaceStatisticsWatcher {
         if (extension != null) {
             return null;
         }
-        JsonObject extensionJson = service.getExtensionData(extensionId);
-        if (extensionJson == null) {
+        MarketPlaceExtension extensionData = service.getExtensionData(extensionId);
+        if (extensionData == null) {
             throw new NotFoundException(extensionId+ " was not found on the Marketplace");
         }
-        extension = marketPlaceToExtension(extensionJson);
+        extension = marketPlaceToExtension(extensionData);
         extension.persistAndFlush();
-        updateInstalls(extension);
+        updateInstalls(extension, toInstallCounts(extensionData));
+        // Observers are notified once the transaction commits
+        crawlCompleted.fire(new CrawlCompleted(Instant.now()));
         return extension;
     }
 
-    private void updateInstalls() {
-        Log.info("Updating installs");
-        Extension.findActive().forEach(this::updateInstalls);
+    /**
+     * Records new snapshots of the publisher's extensions whose counters, extra statistics or version moved since
+     * their latest snapshot.
+     * Unchanged extensions, the long tail of dormant ones, are skipped without any write.
+     */
+    private InstallChanges updateInstalls(PublisherCrawl crawl) {
+        Log.infov("Updating installs for {0}", crawl.publisher());
+        Map<Extension, InstallCounts> counts = new LinkedHashMap<>();
+        Extension.findActiveByPublisher(crawl.publisher()).forEach(extension -> {
+            MarketPlaceExtension extensionData = crawl.data().getExtension(getExtensionName(extension.name));
+            if (extensionData != null) {
+                counts.put(extension, toInstallCounts(extensionData));
+            }
+        });
+        Map<Long, LatestInstall> latestInstalls = LatestInstall.findByExtensions(counts.keySet());
+        int found = counts.size();
+        counts.entrySet().removeIf(entry -> unchanged(entry.getValue(), latestInstalls.get(entry.getKey().id)));
+        InstallChanges changes = new InstallChanges(counts.size(), found - counts.size());
+        if (counts.isEmpty()) {
+            return changes;
+        }
+        // Look up the previous installs of all changed extensions at once, before touching any of them
+        Map<Long, List<ExtensionInstall>> lastInstalls = ExtensionInstall.getLast2Installs(counts.keySet());
+
+        Instant now = Instant.now();
+        List<ExtensionInstall> snapshots = new ArrayList<>(counts.size());
+        counts.forEach((extension, extensionCounts) -> snapshots.add(
+                toSnapshot(extension, extensionCounts, lastInstalls.getOrDefault(extension.id, List.of()), now)));
+        ExtensionInstall.persistBatch(snapshots, latestInstalls);
+        return changes;
     }
 
-    private void updateInstalls(Extension extension) {
-        JsonObject marketplaceData = service.getExtensionData(extension.name);
-        if (marketplaceData == null) {
-            return;
-        }
-        Log.debugv("Updating installs for {0}",extension.name);
+    private static boolean unchanged(InstallCounts counts, LatestInstall latest) {
+        return latest != null
+                && Objects.equals(counts.version(), latest.version)
+                && counts.installed() == latest.installs
+                && getTotalInstalled(counts) == latest.total_installs
+                && Objects.equals(counts.extraStatistics(), latest.extraStatistics);
+    }
 
-        JsonArray statistics = marketplaceData.getJsonArray("statistics");
+    private void updateInstalls(Extension extension, InstallCounts counts) {
+        ExtensionInstall stats = toSnapshot(extension, counts, ExtensionInstall.getLast2Installs(extension), Instant.now());
+        ExtensionInstall.persistBatch(List.of(stats));
+    }
 
-        int installed = getStatAsInt(statistics, "install");
-        int updated = getStatAsInt(statistics, "updateCount");
-        int onpremDownloads = getStatAsInt(statistics, "onpremDownloads");
-        int totalInstalled = installed + updated;
-        if (onpremDownloads > -1 ) {
-            totalInstalled += onpremDownloads;
-        }
-        int delta = 0;
-        String version = marketplaceData.getJsonArray("versions").getJsonObject(0).getString("version","unknown");
+    private ExtensionInstall toSnapshot(Extension extension, InstallCounts counts, List<ExtensionInstall> lastInstalls, Instant now) {
+        Log.debugv("Updating installs for {0}",extension.name);
 
-        Instant now = Instant.now();
+        long installed = counts.installed();
+        long updated = counts.updated();
+        long onpremDownloads = counts.onpremDownloads();
+        long totalInstalled = getTotalInstalled(counts);
+        long delta = 0;
+        String version = counts.version();
 
-        List<ExtensionInstall> lastInstalls = ExtensionInstall.getLast2Installs(extension);
         ExtensionInstall stats = switch (lastInstalls.size()) {
             case 0 -> { // first time we're seeing this extension
                 delta = totalInstalled;
@@ -185,15 +419,59 @@ public class MarketPlaceStatisticsWatcher {
         if (onpremDownloads > -1 ) {
             stats.onpremDownloads = onpremDownloads;
         }
-        stats.persistAndFlush();
+        stats.extraStatistics = counts.extraStatistics();
+        return stats;
     }
 
-    @CacheInvalidate(cacheName = "marketplace-api")
-    public void refresh() {
-        crawl();
+    private static long getTotalInstalled(InstallCounts counts) {
+        long totalInstalled = counts.installed() + counts.updated();
+        if (counts.onpremDownloads() > -1 ) {
+            totalInstalled += counts.onpremDownloads();
+        }
+        return totalInstalled;
+    }
+
+    private static InstallCounts toInstallCounts(MarketPlaceExtension marketplaceData) {
+        ExtensionStatistics statistics = marketplaceData.statistics();
+        return new InstallCounts(marketplaceData.version(),
+                statistics.install(),
+                statistics.updateCount(),
+                statistics.onpremDownloads(),
+                statistics.extras());
+    }
+
+    /**
+     * Drops the cached marketplace data, then triggers a crawl
+     *
+     * @return the crawl run in flight
+     */
+    @CacheInvalidateAll(cacheName = "marketplace-api")
+    public CrawlRun refresh() {
+        return trigger("refresh");
     }
 
     private boolean isSameDay(Instant time1, Instant time2) {
         return time1.truncatedTo(ChronoUnit.DAYS).equals(time2.truncatedTo(ChronoUnit.DAYS));
     }
-}
\ No newline at end of file
+
+    /**
+     * The extensions of a publisher, as found in the marketplace, and how they differ from the existing ones
+     */
+    record PublisherCrawl(String publisher, boolean watched, MarketPlacePublisher data, ExtensionChanges changes) {}
+
+    /**
+     * @param updates the new values of changed extensions, keyed by the id of the existing ones
+     */
+    record ExtensionChanges(List<Extension> inserts, Map<Long, Extension> updates, List<Long> deactivations) {}
+
+    /**
+     * @param changed the number of extensions with a new snapshot
+     * @param skipped the number of extensions left untouched, as nothing changed since their latest snapshot
+     */
+    record InstallChanges(int changed, int skipped) {}
+
+    /**
+     * @param extraStatistics the configured extra statistics, or null if there are none
+     */
+    record InstallCounts(String version, long installed, long updated, long onpremDownloads, Map<String, Double> extraStatistics) {}
+}
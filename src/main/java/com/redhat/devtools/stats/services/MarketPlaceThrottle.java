@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces the requests sent to the marketplace by <code>marketplace-api.max-requests-per-second</code>,
+ * across all the threads sharing the client, and holds them back for as long as a 429 response asks to.
+ */
+public class MarketPlaceThrottle implements ClientRequestFilter, ClientResponseFilter {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final long intervalNanos;
+    private long nextSlot = System.nanoTime();
+
+    public MarketPlaceThrottle() {
+        double maxRequestsPerSecond = ConfigProvider.getConfig()
+                .getOptionalValue("marketplace-api.max-requests-per-second", Double.class)
+                .orElse(10.0);
+        intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond);
+    }
+
+    @Override
+    public void filter(ClientRequestContext request) throws InterruptedIOException {
+        long wait = reserveSlot();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling the marketplace requests");
+            }
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext request, ClientResponseContext response) {
+        if (response.getStatus() == TOO_MANY_REQUESTS) {
+            Duration retryAfter = getRetryAfter(response.getHeaderString(HttpHeaders.RETRY_AFTER));
+            if (retryAfter != null) {
+                holdUntil(System.nanoTime() + retryAfter.toNanos());
+            }
+        }
+    }
+
+    /**
+     * @return how long to wait, in nanoseconds, before sending the request
+     */
+    private synchronized long reserveSlot() {
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextSlot);
+        nextSlot = slot + intervalNanos;
+        return slot - now;
+    }
+
+    private synchronized void holdUntil(long time) {
+        if (time - nextSlot > 0) {
+            nextSlot = time;
+        }
+    }
+
+    /**
+     * Only reads delays in seconds, the form the marketplace sends, and ignores HTTP dates
+     */
+    static Duration getRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return null;
+        }
+        try {
+            long seconds = Long.parseLong(retryAfter.trim());
+            return seconds > 0 ? Duration.ofSeconds(seconds) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * The marketplace answered 429 or 5xx: the same request may succeed later
+ */
+public class MarketPlaceUnavailableException extends WebApplicationException {
+
+    public MarketPlaceUnavailableException(Response response) {
+        super("The marketplace is unavailable (HTTP " + response.getStatus() + ")", response);
+    }
+}
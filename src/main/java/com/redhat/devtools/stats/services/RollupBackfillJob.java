@@ -0,0 +1,65 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import com.redhat.devtools.stats.models.RollupBackfill;
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+
+/**
+ * Builds the install rollups from the existing history, one chunk of extensions per transaction.
+ * Progress is committed with each chunk, so the backfill resumes where it stopped after a restart.
+ * The stats endpoints read from the rollups once the backfill is completed.
+ */
+@ApplicationScoped
+public class RollupBackfillJob {
+
+    @Inject
+    @ConfigProperty(name = "read.only")
+    Boolean readOnly;
+
+    @Inject
+    @ConfigProperty(name = "rollup.backfill.chunk-size", defaultValue = "20")
+    int chunkSize;
+
+    @Inject
+    @ConfigProperty(name = "rollup.backfill.max-duration", defaultValue = "PT30S")
+    Duration maxDuration;
+
+    @Scheduled(every = "{rollup.backfill.every}", delayed = "{rollup.backfill.delay}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void backfill() {
+        if (Boolean.TRUE.equals(readOnly) || QuarkusTransaction.requiringNew().call(RollupBackfill::isCompleted)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long deadline = start + maxDuration.toMillis();
+        int extensions = 0;
+        int chunk;
+        do {
+            chunk = QuarkusTransaction.requiringNew().call(() -> RollupBackfill.lock().backfillNext(chunkSize));
+            extensions += chunk;
+        } while (chunk > 0 && System.currentTimeMillis() < deadline);
+        Log.infov("Backfilled the rollups of {0} extensions in {1} ms{2}", extensions, System.currentTimeMillis() - start,
+                chunk == 0 ? ", backfill completed" : "");
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package com.redhat.devtools.stats.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the statistics array of a marketplace extension into an {@link ExtensionStatistics}, in a single pass.
+ * The install counters are always tracked, as longs. Extra statistics, like ratings or trends, are tracked as doubles
+ * when configured. Other statistics are skipped.
+ */
+public final class StatisticsExtractor {
+
+    static final String INSTALL = "install";
+    static final String UPDATE_COUNT = "updateCount";
+    static final String ONPREM_DOWNLOADS = "onpremDownloads";
+
+    private static final int UNTRACKED = -1;
+    private static final int INSTALL_SLOT = 0;
+    private static final int UPDATE_COUNT_SLOT = 1;
+    private static final int ONPREM_DOWNLOADS_SLOT = 2;
+    private static final int EXTRAS_SLOT = 3;
+
+    private final List<String> extraNames;
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    public StatisticsExtractor(List<String> extraNames) {
+        this.extraNames = List.copyOf(extraNames);
+        slots.put(INSTALL, INSTALL_SLOT);
+        slots.put(UPDATE_COUNT, UPDATE_COUNT_SLOT);
+        slots.put(ONPREM_DOWNLOADS, ONPREM_DOWNLOADS_SLOT);
+        for (int i = 0; i < this.extraNames.size(); i++) {
+            slots.putIfAbsent(this.extraNames.get(i), EXTRAS_SLOT + i);
+        }
+    }
+
+    /**
+     * Returns statistics for an extension that has none
+     */
+    public ExtensionStatistics empty() {
+        return new ExtensionStatistics(extraNames);
+    }
+
+    /**
+     * Reads the statistics array the parser is on, up to its end. Skips the current value if it's not an array.
+     */
+    public ExtensionStatistics extract(JsonParser parser) throws IOException {
+        ExtensionStatistics statistics = empty();
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return statistics;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            int slot = UNTRACKED;
+            boolean named = false;
+            // The value may come before the name, so it's kept until the name is known
+            long pendingLong = 0;
+            double pendingDouble = Double.NaN;
+            boolean pending = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("statisticName".equals(field)) {
+                    slot = slots.getOrDefault(parser.getValueAsString(), UNTRACKED);
+                    named = true;
+                } else if ("value".equals(field) && token.isNumeric()) {
+                    if (named) {
+                        set(statistics, slot, parser);
+                    } else {
+                        pendingLong = parser.getValueAsLong();
+                        pendingDouble = parser.getValueAsDouble();
+                        pending = true;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (pending && slot != UNTRACKED) {
+                set(statistics, slot, pendingLong, pendingDouble);
+            }
+        }
+        return statistics;
+    }
+
+    private static void set(ExtensionStatistics statistics, int slot, JsonParser parser) throws IOException {
+        if (slot == UNTRACKED) {
+            return;
+        }
+        if (slot < EXTRAS_SLOT) {
+            set(statistics, slot, parser.getValueAsLong(), Double.NaN);
+        } else {
+            set(statistics, slot, 0, parser.getValueAsDouble());
+        }
+    }
+
+    private static void set(ExtensionStatistics statistics, int slot, long longValue, double doubleValue) {
+        switch (slot) {
+            case INSTALL_SLOT -> statistics.install = longValue;
+            case UPDATE_COUNT_SLOT -> statistics.updateCount = longValue;
+            case ONPREM_DOWNLOADS_SLOT -> statistics.onpremDownloads = longValue;
+            default -> statistics.extras[slot - EXTRAS_SLOT] = doubleValue;
+        }
+    }
+}
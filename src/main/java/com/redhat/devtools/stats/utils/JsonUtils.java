@@ -15,69 +15,36 @@
  */
 package com.redhat.devtools.stats.utils;
 
-import java.util.Optional;
-
 import com.redhat.devtools.stats.models.Extension;
-import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
+import com.redhat.devtools.stats.services.MarketPlaceExtension;
 
 public class JsonUtils {
 
-    public static JsonArray getExtensions(JsonObject publisher) {
-        JsonArray results = publisher.getJsonArray("results");
-        if (results.isEmpty()) {
-            return new JsonArray();
-        }
-        return results.getJsonObject(0).getJsonArray("extensions").copy();
-    }
-
-    public static JsonObject findExtension(String extensionName, JsonObject publisher) {
-        return findExtension(extensionName, getExtensions(publisher));
-    }
-
-    public static JsonObject findExtension(String extensionName, JsonArray extensions) {
-        int dot = extensionName.indexOf(".");
-        if (dot > -1) {
-            extensionName = extensionName.substring(dot + 1);
-        }
-        for (int i = 0; i < extensions.size(); i++) {
-            JsonObject o = extensions.getJsonObject(i);
-            if (extensionName.equals(o.getString("extensionName"))) {
-                return o;
-            }
-        }
-        return null;
+    /**
+     * Returns the publisher part of an extension id, or null if the id has no publisher
+     *
+     * @return the publisher part of an extension id, or null if the id has no publisher
+     */
+    public static String getPublisherName(String extensionId) {
+        int dot = extensionId.indexOf(".");
+        return dot > -1 ? extensionId.substring(0, dot) : null;
     }
 
     /**
-     * Returns the statistic value, or 0 if that statistic is not found
+     * Returns the extension id stripped from its publisher part
      *
-     * @return the statistic value, or 0 if that statistic is not found
+     * @return the extension id stripped from its publisher part
      */
-    public static int getStatAsInt(JsonArray statistics, String name) {
-        //@formatter:off
-        Optional<JsonObject> statistic = statistics.stream().map(o -> (JsonObject)o)
-                                  .filter(stat -> name.equals(stat.getString("statisticName")))
-                                  .findFirst();
-        if (!statistic.isPresent()) {
-            return 0;
-        }
-        return statistic.map(stat -> stat.getInteger("value")).orElse(0);
-        //@formatter:on
+    public static String getExtensionName(String extensionId) {
+        int dot = extensionId.indexOf(".");
+        return dot > -1 ? extensionId.substring(dot + 1) : extensionId;
     }
 
-    public static Extension marketPlaceToExtension(JsonObject source) {
+    public static Extension marketPlaceToExtension(MarketPlaceExtension source) {
         Extension extension = new Extension();
-        extension.name = source.getJsonObject("publisher").getString("publisherName") + "."
-                + source.getString("extensionName");// marketPlaceExtension;
-        extension.displayName = source.getString("displayName");
-
-        JsonObject version = source.getJsonArray("versions").getJsonObject(0);
-        JsonArray files = version.getJsonArray("files");
-        if (!files.isEmpty()) {
-            JsonObject file = files.getJsonObject(0);
-            extension.icon = file.getString("source");
-        }
+        extension.name = source.publisherName() + "." + source.extensionName();
+        extension.displayName = source.displayName();
+        extension.icon = source.icon();
         return extension;
     }
 }
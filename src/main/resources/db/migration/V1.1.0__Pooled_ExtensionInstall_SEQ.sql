@@ -0,0 +1,2 @@
+    -- Matches the pooled allocationSize of the ExtensionInstall id generator
+    alter sequence ExtensionInstall_SEQ increment by 50;
@@ -0,0 +1,20 @@
+    create table LatestInstall (
+        extension_id bigint not null,
+        installs integer not null,
+        total_installs integer not null,
+        version varchar(255),
+        time timestamp(6) with time zone,
+        primary key (extension_id)
+    );
+
+    alter table if exists LatestInstall
+       add constraint FK_LatestInstall_extension
+       foreign key (extension_id)
+       references Extension
+       on delete cascade;
+
+    insert into LatestInstall (extension_id, installs, total_installs, version, time)
+        select distinct on (extension_id) extension_id, installs, total_installs, version, time
+        from ExtensionInstall
+        where extension_id is not null
+        order by extension_id, time desc;
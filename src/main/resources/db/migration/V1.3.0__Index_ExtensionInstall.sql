@@ -0,0 +1,8 @@
+    -- Covers the per-extension history reads, ordered by time, without visiting the heap
+    create index ExtensionInstall_extension_time_idx
+        on ExtensionInstall (extension_id, time)
+        include (id, version, installs, updates, total_installs, delta, onpremDownloads);
+
+    -- Snapshots are appended in time order, so a BRIN index is enough for time range scans
+    create index ExtensionInstall_time_brin_idx
+        on ExtensionInstall using brin (time);
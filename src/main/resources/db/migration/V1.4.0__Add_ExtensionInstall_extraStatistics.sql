@@ -0,0 +1,2 @@
+    alter table if exists ExtensionInstall
+       add column extraStatistics jsonb;
@@ -0,0 +1,31 @@
+    -- Daily, weekly and monthly rollups of ExtensionInstall: per extension, resolution, version and period,
+    -- the last snapshot of the period, with the deltas of the period summed up
+    create table ExtensionInstallRollup (
+        extension_id bigint not null,
+        resolution varchar(10) not null,
+        version varchar(255) not null,
+        bucket timestamp(6) with time zone not null,
+        time timestamp(6) with time zone not null,
+        delta integer not null,
+        installs integer not null,
+        updates integer not null,
+        total_installs integer not null,
+        onpremDownloads integer not null,
+        primary key (extension_id, resolution, version, bucket)
+    );
+
+    alter table if exists ExtensionInstallRollup
+       add constraint FK_ExtensionInstallRollup_extension
+       foreign key (extension_id)
+       references Extension
+       on delete cascade;
+
+    -- Tracks the backfill of the rollups from the existing history, one chunk of extensions at a time
+    create table RollupBackfill (
+        id bigint not null,
+        lastExtensionId bigint not null,
+        completed boolean not null,
+        primary key (id)
+    );
+
+    insert into RollupBackfill (id, lastExtensionId, completed) values (1, 0, false);
@@ -0,0 +1,19 @@
+    -- Marketplace counters are read as 64-bit integers, store them as such rather than truncating them.
+    -- Rewrites the tables and their indexes, once.
+    alter table if exists ExtensionInstall
+        alter column delta type bigint,
+        alter column installs type bigint,
+        alter column updates type bigint,
+        alter column total_installs type bigint,
+        alter column onpremDownloads type bigint;
+
+    alter table if exists LatestInstall
+        alter column installs type bigint,
+        alter column total_installs type bigint;
+
+    alter table if exists ExtensionInstallRollup
+        alter column delta type bigint,
+        alter column installs type bigint,
+        alter column updates type bigint,
+        alter column total_installs type bigint,
+        alter column onpremDownloads type bigint;
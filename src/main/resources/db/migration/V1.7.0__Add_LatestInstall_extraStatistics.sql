@@ -0,0 +1,13 @@
+    -- Lets the crawler tell that only the extra statistics of an extension moved since its latest snapshot
+    alter table if exists LatestInstall
+       add column extraStatistics jsonb;
+
+    update LatestInstall latest
+        set extraStatistics = ei.extraStatistics
+        from (
+            select distinct on (extension_id) extension_id, extraStatistics
+            from ExtensionInstall
+            where extension_id is not null
+            order by extension_id, time desc
+        ) ei
+        where ei.extension_id = latest.extension_id;
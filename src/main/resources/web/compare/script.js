@@ -0,0 +1,93 @@
+import '../app/js/script.js'
+import $ from 'jquery'
+import Highcharts from 'highcharts'
+
+// Daily points are enough to compare extensions over their whole history
+var RESOLUTION = 'daily';
+
+var promiseCache = {};
+function fetchAndUpdateContent(extensions, tabId) {
+    if (!promiseCache[tabId]) {
+        promiseCache[tabId] = fetchDataTab(extensions, tabId)
+            .then(function (series) {
+                renderChart(tabId, series);
+            })
+    }
+}
+
+async function setupComparison(extensions) {
+    Highcharts.setOptions({
+        global: {
+            useUTC: true
+        }
+    });
+    $('a[data-toggle="tab"]').on('shown.bs.tab', function (e) {
+        var tab = e.target.getAttribute('data-tab');
+        fetchAndUpdateContent(extensions, tab);
+    });
+
+    var activeTab = $('.nav-tabs .active a').data('tab');
+    fetchAndUpdateContent(extensions, activeTab);
+};
+
+function renderChart(tabId, series) {
+    var title = $('#'+tabId).attr('data-title')
+    new Highcharts.Chart({
+        chart: {
+            renderTo: tabId+"-container",
+            zoomType: 'x',
+            animation: Highcharts.svg,
+            marginRight: 10,
+        },
+        title: {
+            text: title
+        },
+        xAxis: {
+            type: 'datetime'
+        },
+        yAxis: {
+            title: {
+                text: title
+            },
+            floor: 0
+        },
+        legend: {
+            enabled: true
+        },
+        exporting: {
+            enabled: false
+        },
+        plotOptions: {
+            series: {
+                marker: {
+                    radius: 2
+                },
+                lineWidth: 1
+            }
+        },
+        series: series
+    });
+}
+
+// A single request returns the series of all the extensions
+async function fetchDataTab(extensions, tabId) {
+    var start = Date.now();
+    var response = await fetch('/stats?extensions='+encodeURIComponent(extensions)+'&resolution='+RESOLUTION+'&stats='+tabId);
+    var groups = JSON.parse(await response.text());
+    var series = groups.map(function (group) {
+        var times = group.time;
+        var values = group[tabId];
+        var data = new Array(times.length);
+        for (var j = 0; j < times.length; j++) {
+            data[j] = [times[j], values[j]];
+        }
+        return {
+            name: group._id,
+            data: data
+        };
+    });
+    console.log("Loaded " + series.length + " extensions for "+tabId+" in " + (Date.now() - start) + "ms");
+    return series;
+}
+
+window.setupComparison = setupComparison;
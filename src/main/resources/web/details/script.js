@@ -2,12 +2,8 @@ import '../app/js/script.js'
 import $ from 'jquery'
 import Highcharts from 'highcharts'
 
-function toPoint(data) {
-    return [
-        new Date(data.time).getTime(),
-        data.installs? data.installs : data.total_installed
-    ];
-}
+// Enough points for a full width chart, however long the history is
+var MAX_POINTS = 2000;
 
 var promiseCache = {};
 function fetchAndUpdateContent(extensionName, tabId) {
@@ -112,7 +108,8 @@ function renderChart(tabId, series) {
 
 async function fetchDataTab(extensionName, tabId) {
     var start = Date.now();
-    var response = await fetch('/stats/'+extensionName+'?stats=time&stats='+tabId);
+    // The server reads long histories from the daily, weekly or monthly rollups, so they fit in MAX_POINTS
+    var response = await fetch('/stats/'+extensionName+'?format=columnar&resolution=auto&maxPoints='+MAX_POINTS+'&stats='+tabId);
     var versions = JSON.parse(await response.text());
     var i = 0;
     var data = null;
@@ -125,10 +122,12 @@ async function fetchDataTab(extensionName, tabId) {
     for (var l = versions.length; i < l; i++) {
         startVersion = Date.now();
         var version = versions[i];
-        data = [];
-        for (var z = version.events.length, j = 0; j < z; j++) {
-            point = toPoint(version.events[j]);
-            data.push(point);
+        var times = version.time;
+        var values = version[tabId];
+        data = new Array(times.length);
+        for (var z = times.length, j = 0; j < z; j++) {
+            point = [times[j], values[j]];
+            data[j] = point;
             if (latest == null || latest[0] < point[0]) {
                 latest = point;
             }
@@ -0,0 +1,89 @@
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.models.InstallHistory;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.ws.rs.core.HttpHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+
+@QuarkusTest
+public class BulkStatsTest {
+
+    private static final int EXTENSIONS = 2;
+    private static final int DAYS = 10;
+
+    private InstallHistory history;
+
+    @BeforeEach
+    public void createHistory() {
+        history = InstallHistory.create("bulkstatstest", EXTENSIONS, DAYS, Duration.ofDays(1), DAYS);
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    @Test
+    public void testStatsAreGroupedByExtension() {
+        given().queryParam("extensions", history.name(2) + "," + history.name(1))
+                .when().get("/stats")
+                .then()
+                .statusCode(200)
+                .body("_id", contains(history.name(1), history.name(2)))
+                .body("[0].time", hasSize(DAYS))
+                .body("[1].total_installed", hasSize(DAYS));
+    }
+
+    @Test
+    public void testUnknownExtensionsAreNotFound() {
+        given().queryParam("extensions", history.name(1) + ",bulkstatstest.unknown")
+                .when().get("/stats")
+                .then()
+                .statusCode(404);
+    }
+
+    @Test
+    public void testMissingExtensionsAreRejected() {
+        given().when().get("/stats").then().statusCode(400);
+        given().queryParam("extensions", " , ").when().get("/stats").then().statusCode(400);
+    }
+
+    @Test
+    public void testTooManyExtensionsAreRejected() {
+        // Checked before looking them up
+        String extensions = IntStream.rangeClosed(1, 51).mapToObj(history::name).collect(Collectors.joining(","));
+        given().queryParam("extensions", extensions)
+                .when().get("/stats")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testUnmodifiedStatsAreNotSentAgain() {
+        String extensions = history.name(1) + "," + history.name(2);
+        String etag = given().queryParam("extensions", extensions)
+                .when().get("/stats")
+                .then()
+                .statusCode(200)
+                .header(HttpHeaders.ETAG, notNullValue())
+                .extract().header(HttpHeaders.ETAG);
+
+        // Listed in another order, they're the same extensions
+        given().queryParam("extensions", history.name(2) + "," + history.name(1))
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .when().get("/stats")
+                .then()
+                .statusCode(304);
+    }
+}
@@ -0,0 +1,106 @@
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.models.Extension;
+import com.redhat.devtools.stats.models.InstallHistory;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.ws.rs.core.HttpHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@QuarkusTest
+public class ConditionalRequestTest {
+
+    // 10 days of hourly snapshots
+    private static final int SNAPSHOTS = 240;
+
+    private InstallHistory history;
+
+    @BeforeEach
+    public void createHistory() {
+        history = InstallHistory.create("conditionalrequesttest", 1, SNAPSHOTS, Duration.ofHours(1), SNAPSHOTS);
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    @Test
+    public void testUnchangedDetailsAreNotSentAgain() {
+        String etag = getETag("/" + history.name(1) + ".html");
+
+        given().header(HttpHeaders.IF_NONE_MATCH, etag)
+                .when().get("/" + history.name(1) + ".html")
+                .then()
+                .statusCode(304);
+    }
+
+    @Test
+    public void testRenamedDetailsAreSentAgain() {
+        String etag = getETag("/" + history.name(1) + ".html");
+
+        rename(history.name(1), "Renamed extension");
+
+        String renamedEtag = given().header(HttpHeaders.IF_NONE_MATCH, etag)
+                .when().get("/" + history.name(1) + ".html")
+                .then()
+                .statusCode(200)
+                .body(containsString("Renamed extension"))
+                .extract().header(HttpHeaders.ETAG);
+        assertNotEquals(etag, renamedEtag);
+        given().header(HttpHeaders.IF_NONE_MATCH, renamedEtag)
+                .when().get("/" + history.name(1) + ".html")
+                .then()
+                .statusCode(304);
+    }
+
+    @Test
+    public void testRenamedIndexIsSentAgain() {
+        String etag = getETag("/index.html");
+
+        rename(history.name(1), "Renamed extension");
+
+        given().header(HttpHeaders.IF_NONE_MATCH, etag)
+                .when().get("/index.html")
+                .then()
+                .statusCode(200)
+                .body(containsString("Renamed extension"));
+    }
+
+    @Test
+    public void testStatsAreTaggedWithTheResolutionPicked() {
+        // 10 days fit in 20 daily points, not in 20 raw ones
+        String auto = getETag("/stats/" + history.name(1) + "?maxPoints=20");
+        String daily = getETag("/stats/" + history.name(1) + "?resolution=daily&maxPoints=20");
+        String raw = getETag("/stats/" + history.name(1) + "?resolution=raw&maxPoints=20");
+
+        assertEquals(daily, auto);
+        assertNotEquals(raw, auto);
+        given().header(HttpHeaders.IF_NONE_MATCH, raw)
+                .when().get("/stats/" + history.name(1) + "?maxPoints=20")
+                .then()
+                .statusCode(200)
+                .header(HttpHeaders.ETAG, not(raw));
+    }
+
+    private static String getETag(String path) {
+        return given().when().get(path)
+                .then()
+                .statusCode(200)
+                .extract().header(HttpHeaders.ETAG);
+    }
+
+    private static void rename(String name, String displayName) {
+        QuarkusTransaction.requiringNew().run(() -> Extension.update("displayName = ?1 where name = ?2", displayName, name));
+    }
+}
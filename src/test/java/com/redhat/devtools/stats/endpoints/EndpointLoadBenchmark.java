@@ -0,0 +1,102 @@
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.models.InstallHistory;
+import io.quarkus.logging.Log;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Bursts of concurrent requests, as when many people open the details of a new release at once, for pages
+ * that aren't cached yet, then for cached ones. While the cold burst is in flight, a cached page is requested
+ * to tell whether the burst holds up the worker threads.
+ * Run with <code>./mvnw test -Pbenchmark -Dtest=EndpointLoadBenchmark</code>, or compare two revisions with
+ * <code>./compare_endpoint_benchmark.sh [base] [head]</code>.
+ */
+@QuarkusTest
+@Tag("benchmark")
+public class EndpointLoadBenchmark {
+
+    private static final int EXTENSIONS = 20;
+    private static final int DAYS = 2 * 365;
+    private static final int CONCURRENCY = 400;
+    private static final int ROUNDS = 3;
+
+    @TestHTTPResource("/")
+    URI baseUri;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private InstallHistory history;
+
+    @BeforeEach
+    public void createHistory() {
+        history = InstallHistory.create("load", EXTENSIONS, DAYS, Duration.ofDays(1), 30);
+        InstallHistory.analyze();
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    @Test
+    public void burstStatsRequests() {
+        String warmPage = "stats/" + history.name(1);
+        get(warmPage).join();
+        for (int round = 0; round < ROUNDS; round++) {
+            // Cache keys are built from the parsed parameters, so a distinct upper bound in the future makes every
+            // request of the cold burst a miss, while still returning the whole history
+            Instant to = Instant.now().plus(Duration.ofDays(1 + round));
+            IntFunction<String> paths = i -> "stats/" + history.name(1 + i % EXTENSIONS) + "?resolution=daily&to=" + to.plusSeconds(i);
+            measure("cold", paths, warmPage);
+            measure("warm", paths, warmPage);
+        }
+    }
+
+    private void measure(String name, IntFunction<String> paths, String warmPage) {
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> burst = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            burst.add(get(paths.apply(i)));
+        }
+        long warmDuringBurst = get(warmPage).join();
+        long[] latencies = burst.stream().mapToLong(CompletableFuture::join).sorted().toArray();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        Log.infov("{0} burst of {1} requests: {2} req/s, p50 {3} ms, p95 {4} ms, p99 {5} ms, max {6} ms, cached page during the burst {7} ms",
+                name, CONCURRENCY, (long) (CONCURRENCY / seconds), percentile(latencies, 50), percentile(latencies, 95),
+                percentile(latencies, 99), latencies[latencies.length - 1], warmDuringBurst);
+    }
+
+    /**
+     * @return the latency of the request, in ms
+     */
+    private CompletableFuture<Long> get(String path) {
+        long start = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path)).GET().build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> {
+                    assertEquals(200, response.statusCode(), path);
+                    return (System.nanoTime() - start) / 1_000_000;
+                });
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.max(0, (int) Math.ceil(sorted.length * percentile / 100.0) - 1)];
+    }
+}
@@ -0,0 +1,86 @@
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.models.InstallHistory;
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+public class ExportTest {
+
+    private static final int EXTENSIONS = 2;
+    private static final int DAYS = 10;
+    private static final String HEADER = "extension,version,time,delta,installs,updates,total_installed,onpremdownloads";
+
+    private InstallHistory history;
+
+    @BeforeEach
+    public void createHistory() {
+        history = InstallHistory.create("exporttest", EXTENSIONS, DAYS, Duration.ofDays(1), DAYS);
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    @Test
+    public void testExport() {
+        String csv = given().when().get("/export.csv").then().statusCode(200).extract().asString();
+        assertExported(csv);
+    }
+
+    @Test
+    public void testGzippedExport() throws IOException {
+        byte[] gzipped = given().when().get("/export.csv.gz").then().statusCode(200).extract().asByteArray();
+        try (InputStream csv = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            assertExported(new String(csv.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testArrowExport() throws IOException {
+        byte[] arrow = given().when().get("/export.arrow").then().statusCode(200)
+                .contentType(ExtensionsResource.ARROW_STREAM).extract().asByteArray();
+        long exported = 0;
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(arrow), allocator)) {
+            VectorSchemaRoot batch = reader.getVectorSchemaRoot();
+            assertEquals(HEADER, batch.getSchema().getFields().stream()
+                    .map(field -> field.getName().toLowerCase()).collect(Collectors.joining(",")));
+            while (reader.loadNextBatch()) {
+                VarCharVector extensions = (VarCharVector) batch.getVector("extension");
+                for (int i = 0; i < batch.getRowCount(); i++) {
+                    if (extensions.getObject(i).toString().startsWith("exporttest.")) {
+                        exported++;
+                    }
+                }
+            }
+        }
+        assertEquals(EXTENSIONS * DAYS, exported);
+    }
+
+    private static void assertExported(String csv) {
+        List<String> lines = csv.lines().toList();
+        assertEquals(HEADER, lines.get(0).toLowerCase());
+        assertEquals(EXTENSIONS * DAYS, lines.stream().filter(line -> line.startsWith("exporttest.")).count());
+    }
+}
@@ -0,0 +1,67 @@
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.services.GalleryStub;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.core.json.JsonObject;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@QuarkusTestResource(value = GalleryStub.class, restrictToAnnotatedClass = true)
+public class MarketplaceFacadeCacheTest {
+
+    @Inject
+    MarketplaceFacadeCache cache;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Test
+    public void testConcurrentRequestsShareOneFetch() {
+        double upstreamCalls = upstreamCalls();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<JsonObject>> requests = IntStream.range(0, 8)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(
+                            () -> cache.getExtensionData(GalleryStub.PUBLISHER + ".extension-" + i).join(), executor))
+                    .toList();
+            IntStream.range(0, 8).forEach(i -> assertEquals("extension-" + i,
+                    requests.get(i).join().getString("extensionName")));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(upstreamCalls + 1, upstreamCalls());
+
+        assertNotNull(cache.getExtensionData(GalleryStub.PUBLISHER + ".extension-8").join());
+        assertEquals(upstreamCalls + 1, upstreamCalls(), "The publisher should be cached");
+    }
+
+    @Test
+    public void testMarketplaceJsonIsPassedThrough() {
+        JsonObject extension = cache.getExtensionData(GalleryStub.PUBLISHER + ".extension-" + 200).join();
+        assertEquals("Extension 200", extension.getString("displayName"));
+        assertEquals("^1.75.0", extension.getJsonArray("versions").getJsonObject(0)
+                .getJsonArray("properties").getJsonObject(0).getString("value"), "Fields left out by the crawler should be kept");
+        assertEquals("averagerating", extension.getJsonArray("statistics").getJsonObject(1).getString("statisticName"));
+    }
+
+    @Test
+    public void testUnknownExtension() {
+        assertNull(cache.getExtensionData("unknown.extension").join());
+        assertNull(cache.getExtensionData("no-publisher").join());
+    }
+
+    private double upstreamCalls() {
+        return registry.get("marketplace-facade.upstream.calls").counter().count();
+    }
+}
@@ -0,0 +1,180 @@
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.services.CrawlCompleted;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs in the application, as responses are rendered in transactions, but against its own cache
+ */
+@QuarkusTest
+public class ResponseCacheTest {
+
+    private static final int BODY_SIZE = 4 * 1024;
+    // Plain and gzipped, random bodies weigh about twice their size
+    private static final int MAX_SIZE = 5 * 2 * BODY_SIZE;
+
+    private final Map<String, AtomicInteger> renders = new ConcurrentHashMap<>();
+    private ResponseCache cache;
+
+    @BeforeEach
+    public void createCache() {
+        cache = new ResponseCache();
+        cache.maxSize = new MemorySize(BigInteger.valueOf(MAX_SIZE));
+        cache.maxEntrySize = new MemorySize(BigInteger.valueOf(2 * BODY_SIZE));
+        cache.renderConcurrency = 2;
+        cache.registry = new SimpleMeterRegistry();
+        cache.init();
+    }
+
+    @AfterEach
+    public void shutdownCache() {
+        cache.shutdown();
+    }
+
+    @Test
+    public void testMissesAreRenderedOnce() {
+        CompletableFuture<?>[] responses = new CompletableFuture[10];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = cache.get("key", false, body("key", BODY_SIZE));
+        }
+        CompletableFuture.allOf(responses).join();
+
+        assertEquals(1, renders("key"));
+    }
+
+    @Test
+    public void testResponsesAreEvictedByWeight() {
+        for (int i = 0; i < 10; i++) {
+            cache.get("key" + i, false, body("key" + i, BODY_SIZE)).join();
+        }
+        cache.cleanUp();
+
+        for (int i = 0; i < 10; i++) {
+            cache.get("key" + i, false, body("key" + i, BODY_SIZE)).join();
+        }
+        int rendered = 0;
+        for (int i = 0; i < 10; i++) {
+            rendered += renders("key" + i);
+        }
+        // At most 5 fit
+        assertTrue(rendered >= 15, rendered + " renders");
+    }
+
+    @Test
+    public void testLargeBodiesAreStreamed() {
+        assertNull(cache.get("key", false, body("key", 3 * BODY_SIZE)).join());
+        assertNull(cache.get("key", false, body("key", 3 * BODY_SIZE)).join());
+
+        assertEquals(1, renders("key"));
+    }
+
+    @Test
+    public void testCrawlOutdatesResponses() {
+        assertEquals(1, render(cache.get("key", false, body("key", BODY_SIZE)).join()));
+
+        crawl();
+
+        assertEquals(2, render(cache.get("key", false, body("key", BODY_SIZE)).join()));
+        assertEquals(2, render(cache.get("key", false, body("key", BODY_SIZE)).join()));
+    }
+
+    @Test
+    public void testRenderingDuringCrawlIsOutdated() {
+        CountDownLatch crawled = new CountDownLatch(1);
+        Supplier<ResponseBody> body = body("key", BODY_SIZE, 1, crawled);
+        CompletableFuture<CachedResponse> response = cache.get("key", false, body);
+        while (renders("key") == 0) {
+            Thread.onSpinWait();
+        }
+
+        // Committed while the first rendering is still reading
+        crawl();
+        crawled.countDown();
+
+        assertEquals(2, render(response.join()));
+        assertEquals(2, render(cache.get("key", false, body).join()));
+        assertEquals(2, renders("key"));
+    }
+
+    @Test
+    public void testRebuiltResponsesAreServedUntilRebuilt() throws Exception {
+        CountDownLatch rebuilding = new CountDownLatch(1);
+        Supplier<ResponseBody> body = body("key", BODY_SIZE, 2, rebuilding);
+        assertEquals(1, render(cache.get("key", true, body).join()));
+
+        crawl();
+
+        // The rebuild waits for the latch, meanwhile the previous response is served
+        assertEquals(1, render(cache.get("key", true, body).join()));
+        rebuilding.countDown();
+        cache.awaitRebuild();
+        assertEquals(2, render(cache.get("key", true, body).join()));
+        assertEquals(2, renders("key"));
+    }
+
+    @Test
+    public void testStreamedResponsesAreNotRebuilt() throws Exception {
+        assertNull(cache.get("key", true, body("key", 3 * BODY_SIZE)).join());
+
+        crawl();
+        cache.awaitRebuild();
+
+        assertNull(cache.get("key", true, body("key", 3 * BODY_SIZE)).join());
+        assertEquals(1, renders("key"));
+    }
+
+    private void crawl() {
+        cache.onCrawlCompleted(new CrawlCompleted(Instant.now()));
+    }
+
+    private Supplier<ResponseBody> body(String key, int size) {
+        return body(key, size, 0, new CountDownLatch(0));
+    }
+
+    /**
+     * Supplies random bodies of the given size, starting with the number of times they were rendered.
+     * The <code>blocked</code> rendering waits for the latch.
+     */
+    private Supplier<ResponseBody> body(String key, int size, int blocked, CountDownLatch latch) {
+        return () -> {
+            int render = renders.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            if (render == blocked) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] bytes = new byte[size];
+            new Random(render).nextBytes(bytes);
+            bytes[0] = (byte) render;
+            return new ResponseBody("application/octet-stream", Map.of(), Instant.EPOCH, key, output -> output.write(bytes));
+        };
+    }
+
+    private int renders(String key) {
+        AtomicInteger count = renders.get(key);
+        return count == null ? 0 : count.get();
+    }
+
+    private static int render(CachedResponse response) {
+        return response.body()[0];
+    }
+}
@@ -0,0 +1,142 @@
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.models.ExtensionInstall.InstallDto;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatsDownsamplerTest {
+
+    private static final ToLongFunction<InstallDto> INSTALLS = InstallDto::total_installs;
+    private static final Instant START = Instant.parse("2023-01-01T00:00:00Z");
+
+    @Test
+    public void testSeriesWithinMaxPointsIsUnchanged() {
+        List<InstallDto> series = series("1.0", 0, 10);
+
+        assertEquals(series, downsample(series, 10));
+        assertEquals(series, downsample(series, 2000));
+        assertSame(series, StatsDownsampler.lttb(series, 10, INSTALLS));
+    }
+
+    @Test
+    public void testFirstAndLastPointsAreKept() {
+        List<InstallDto> series = series("1.0", 0, 1000);
+
+        List<InstallDto> sampled = downsample(series, 50);
+
+        assertEquals(50, sampled.size());
+        assertEquals(series.get(0), sampled.get(0));
+        assertEquals(series.get(999), sampled.get(49));
+        assertOrderedSubset(series, sampled);
+    }
+
+    @Test
+    public void testPeaksAreKept() {
+        List<InstallDto> series = series("1.0", 0, 1000);
+        InstallDto peak = install("1.0", 500, 1_000_000);
+        series.set(500, peak);
+
+        assertTrue(downsample(series, 20).contains(peak));
+    }
+
+    @Test
+    public void testShortSeries() {
+        List<InstallDto> one = series("1.0", 0, 1);
+        List<InstallDto> two = series("1.0", 0, 2);
+
+        assertEquals(one, StatsDownsampler.lttb(one, 1, INSTALLS));
+        assertEquals(List.of(two.get(1)), StatsDownsampler.lttb(two, 1, INSTALLS));
+        assertEquals(two, StatsDownsampler.lttb(two, 2, INSTALLS));
+        // The latest point of the version is the one kept
+        assertEquals(List.of(two.get(1)), downsample(two, 1));
+        assertEquals(List.of(), downsample(List.of(), 1));
+    }
+
+    @Test
+    public void testVersionsAreDownsampledSeparately() {
+        List<InstallDto> older = series("1.0", 0, 900);
+        List<InstallDto> newer = series("1.1", 900, 100);
+        List<InstallDto> series = new ArrayList<>(older);
+        series.addAll(newer);
+
+        List<InstallDto> sampled = downsample(series, 100);
+
+        // Each version keeps its share of the points, with its own first and last points
+        List<InstallDto> sampledOlder = sampled.stream().filter(ei -> "1.0".equals(ei.version())).toList();
+        List<InstallDto> sampledNewer = sampled.stream().filter(ei -> "1.1".equals(ei.version())).toList();
+        assertEquals(90, sampledOlder.size());
+        assertEquals(10, sampledNewer.size());
+        assertEquals(sampledOlder, sampled.subList(0, 90));
+        assertEquals(older.get(0), sampledOlder.get(0));
+        assertEquals(older.get(899), sampledOlder.get(89));
+        assertEquals(newer.get(0), sampledNewer.get(0));
+        assertEquals(newer.get(99), sampledNewer.get(9));
+    }
+
+    @Test
+    public void testOutputSizeIsBounded() {
+        // Small versions keep at least their latest point, and shares are rounded, so up to 1 more point per version
+        int[] sizes = {1, 2, 3, 7, 50, 333, 1000, 5};
+        List<InstallDto> series = new ArrayList<>();
+        int offset = 0;
+        for (int v = 0; v < sizes.length; v++) {
+            series.addAll(series("1." + v, offset, sizes[v]));
+            offset += sizes[v];
+        }
+
+        for (int maxPoints : new int[]{1, 10, 100, 1000}) {
+            List<InstallDto> sampled = downsample(series, maxPoints);
+            assertTrue(sampled.size() <= maxPoints + sizes.length,
+                    sampled.size() + " points kept out of " + maxPoints);
+            assertOrderedSubset(series, sampled);
+        }
+    }
+
+    @Test
+    public void testSourceIsClosed() {
+        AtomicBoolean closed = new AtomicBoolean();
+        List<InstallDto> series = series("1.0", 0, 100);
+
+        StatsDownsampler.downsample(series.stream().onClose(() -> closed.set(true)), series.size(), 10, INSTALLS).close();
+
+        assertTrue(closed.get());
+    }
+
+    private static List<InstallDto> downsample(List<InstallDto> series, int maxPoints) {
+        try (Stream<InstallDto> sampled = StatsDownsampler.downsample(series.stream(), series.size(), maxPoints, INSTALLS)) {
+            return sampled.toList();
+        }
+    }
+
+    private static void assertOrderedSubset(List<InstallDto> series, List<InstallDto> sampled) {
+        int previous = -1;
+        for (InstallDto ei : sampled) {
+            int index = series.indexOf(ei);
+            assertTrue(index > previous, ei + " is out of order");
+            previous = index;
+        }
+    }
+
+    /**
+     * Hourly installs of a version, growing along a sawtooth so that points differ
+     */
+    private static List<InstallDto> series(String version, int offset, int size) {
+        List<InstallDto> series = new ArrayList<>(size);
+        for (int i = offset; i < offset + size; i++) {
+            series.add(install(version, i, i + (i % 7) * 3L));
+        }
+        return series;
+    }
+
+    private static InstallDto install(String version, int hour, long totalInstalls) {
+        return new InstallDto(version, START.plusSeconds(hour * 3600L), 1, 1, 0, totalInstalls, 0);
+    }
+}
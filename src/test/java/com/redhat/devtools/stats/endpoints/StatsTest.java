@@ -0,0 +1,222 @@
+package com.redhat.devtools.stats.endpoints;
+
+import com.redhat.devtools.stats.models.InstallHistory;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.restassured.parsing.Parser;
+import io.restassured.response.Response;
+import jakarta.ws.rs.core.HttpHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class StatsTest {
+
+    // A new version every 5 days: 1.2 on the first day, 1.1 on the next 5, then 1.0 until today
+    private static final int DAYS = 10;
+    private static final String CSV_HEADER = "version,installs,updates,total_installed,time";
+
+    private InstallHistory history;
+
+    @BeforeEach
+    public void createHistory() {
+        history = InstallHistory.create("statstest", 1, DAYS, Duration.ofDays(1), 5);
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    @Test
+    public void testWildcardsGetJson() {
+        for (String accept : new String[]{"*/*", "application/*", "application/json"}) {
+            given().accept(accept)
+                    .when().get("/stats/" + history.name(1))
+                    .then()
+                    .statusCode(200)
+                    .contentType(ContentType.JSON)
+                    .body("_id", contains("1.2", "1.1", "1.0"))
+                    .body("[1].events", hasSize(5))
+                    .body("[1].events[0].total_installed", is(1))
+                    .body("[1].time", nullValue());
+        }
+    }
+
+    @Test
+    public void testDefaultAcceptGetsJson() {
+        given().when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(200)
+                .contentType(ContentType.JSON)
+                .body("[1].events", hasSize(5));
+    }
+
+    @Test
+    public void testColumnarJsonIsNegotiated() {
+        given().accept("application/json;q=0.5, " + ExtensionsResource.COLUMNAR_JSON)
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(200)
+                .contentType(ExtensionsResource.COLUMNAR_JSON)
+                .parser(ExtensionsResource.COLUMNAR_JSON, Parser.JSON)
+                .body("_id", contains("1.2", "1.1", "1.0"))
+                .body("[1].time", hasSize(5))
+                .body("[1].total_installed", hasSize(5))
+                .body("[1].events", nullValue());
+    }
+
+    @Test
+    public void testColumnarFormatIsJson() {
+        given().queryParam("format", "columnar")
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(200)
+                .contentType(ContentType.JSON)
+                .body("[1].time", hasSize(5));
+    }
+
+    @Test
+    public void testOtherTypesAreNotAcceptable() {
+        given().accept("text/csv")
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(406);
+    }
+
+    @Test
+    public void testInstallsAreFilteredByVersion() {
+        given().queryParam("version", "1.1")
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(200)
+                .body("_id", contains("1.1"))
+                .body("[0].events", hasSize(5));
+    }
+
+    @Test
+    public void testInstallsAreFilteredByTime() {
+        // Snapshots are taken at the same time of day, so dates split them by day
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        given().queryParam("from", today.minusDays(5).toString())
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(200)
+                .body("_id", contains("1.1", "1.0"))
+                .body("[0].events", hasSize(1))
+                .body("[1].events", hasSize(4));
+        given().queryParam("to", today.minusDays(5).toString())
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(200)
+                .body("_id", contains("1.2", "1.1"))
+                .body("[0].events", hasSize(1))
+                .body("[1].events", hasSize(4));
+        given().queryParam("from", today.minusDays(7).toString())
+                .queryParam("to", today.minusDays(2).toString())
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(200)
+                .body("_id", contains("1.1", "1.0"))
+                .body("[0].events", hasSize(3))
+                .body("[1].events", hasSize(2));
+    }
+
+    @Test
+    public void testInstallsAreResumedAfterATime() {
+        // Ordered by time, the first snapshot of 1.0 follows the 5th
+        String after = csvRows(getCsv("/" + history.name(1) + ".csv")).get(5).split(",")[4];
+
+        given().queryParam("after", after)
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(200)
+                .body("_id", contains("1.0"))
+                .body("[0].events", hasSize(4));
+    }
+
+    @Test
+    public void testInvalidFiltersAreRejected() {
+        given().queryParam("from", "yesterday")
+                .when().get("/stats/" + history.name(1))
+                .then()
+                .statusCode(400);
+        given().queryParam("limit", "0")
+                .when().get("/" + history.name(1) + ".csv")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testCsvIsPagedUntilExhausted() {
+        List<String> all = csvRows(getCsv("/" + history.name(1) + ".csv"));
+        assertEquals(DAYS, all.size());
+
+        assertEquals(all, getCsvPages("/" + history.name(1) + ".csv?limit=3"));
+        assertEquals(all, getCsvPages("/" + history.name(1) + ".csv?limit=" + DAYS));
+        assertEquals(all, getCsvPages("/" + history.name(1) + ".csv?limit=" + (DAYS + 1)));
+    }
+
+    @Test
+    public void testCsvPagesKeepTheFilters() {
+        List<String> rows = getCsvPages("/" + history.name(1) + ".csv?version=1.1&limit=2");
+
+        assertEquals(5, rows.size());
+        assertTrue(rows.stream().allMatch(row -> row.startsWith("1.1,")), rows.toString());
+        assertEquals(rows, csvRows(getCsv("/" + history.name(1) + ".csv?version=1.1")));
+    }
+
+    /**
+     * Follows the <code>next</code> links from the given page, and returns the rows of all pages
+     */
+    private static List<String> getCsvPages(String path) {
+        List<String> rows = new ArrayList<>();
+        int pages = 0;
+        for (String next = path; next != null; ) {
+            assertTrue(++pages <= DAYS + 1, "Still paging after " + pages + " pages");
+            Response page = getCsv(next);
+            rows.addAll(csvRows(page));
+            String link = page.header(HttpHeaders.LINK);
+            if (link == null) {
+                next = null;
+            } else {
+                assertTrue(link.endsWith("rel=\"next\""), link);
+                next = link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+            }
+        }
+        return rows;
+    }
+
+    private static Response getCsv(String path) {
+        // Links are already encoded
+        return given().urlEncodingEnabled(false)
+                .when().get(path)
+                .then()
+                .statusCode(200)
+                .contentType(startsWith("text/csv"))
+                .extract().response();
+    }
+
+    private static List<String> csvRows(Response csv) {
+        List<String> lines = Arrays.asList(csv.asString().split("\n"));
+        assertEquals(CSV_HEADER, lines.get(0));
+        return lines.subList(1, lines.size());
+    }
+}
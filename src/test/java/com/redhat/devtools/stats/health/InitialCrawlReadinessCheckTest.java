@@ -0,0 +1,59 @@
+package com.redhat.devtools.stats.health;
+
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InitialCrawlReadinessCheckTest {
+
+    @Test
+    public void testUpToDateOnceTheInitialCrawlCompleted() {
+        HealthCheckResponse response = InitialCrawlReadinessCheck.call(CompletableFuture.completedFuture(null),
+                () -> {
+                    throw new AssertionError("The data doesn't need to be looked up");
+                });
+        assertEquals(HealthCheckResponse.Status.UP, response.getStatus());
+        assertEquals("up to date", data(response).get("data"));
+    }
+
+    @Test
+    public void testStaleWhileTheInitialCrawlIsRunning() {
+        HealthCheckResponse response = InitialCrawlReadinessCheck.call(new CompletableFuture<>(), () -> true);
+        assertEquals(HealthCheckResponse.Status.UP, response.getStatus());
+        assertEquals("stale", data(response).get("data"));
+        assertEquals("running", data(response).get("initialCrawl"));
+    }
+
+    @Test
+    public void testStaleWhenPublishersFailed() {
+        CompletableFuture<Void> initialCrawl = new CompletableFuture<>();
+        initialCrawl.completeExceptionally(new IllegalStateException("Failed to crawl [redhat]"));
+        HealthCheckResponse response = InitialCrawlReadinessCheck.call(initialCrawl, () -> true);
+        assertEquals(HealthCheckResponse.Status.UP, response.getStatus());
+        assertEquals("stale", data(response).get("data"));
+        assertEquals("failed", data(response).get("initialCrawl"));
+        assertEquals("Failed to crawl [redhat]", data(response).get("error"));
+    }
+
+    @Test
+    public void testDownWithoutData() {
+        HealthCheckResponse running = InitialCrawlReadinessCheck.call(new CompletableFuture<>(), () -> false);
+        assertEquals(HealthCheckResponse.Status.DOWN, running.getStatus());
+        assertEquals("none yet", data(running).get("data"));
+
+        CompletableFuture<Void> initialCrawl = new CompletableFuture<>();
+        initialCrawl.completeExceptionally(new IllegalStateException("Marketplace unavailable"));
+        HealthCheckResponse failed = InitialCrawlReadinessCheck.call(initialCrawl, () -> false);
+        assertEquals(HealthCheckResponse.Status.DOWN, failed.getStatus());
+        assertEquals("none yet", data(failed).get("data"));
+        assertEquals("failed", data(failed).get("initialCrawl"));
+    }
+
+    private static Map<String, Object> data(HealthCheckResponse response) {
+        return response.getData().orElseThrow();
+    }
+}
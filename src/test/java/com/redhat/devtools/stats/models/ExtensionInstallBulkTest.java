@@ -0,0 +1,65 @@
+package com.redhat.devtools.stats.models;
+
+import com.redhat.devtools.stats.models.ExtensionInstall.ExtensionInstallDto;
+import com.redhat.devtools.stats.models.ExtensionInstall.InstallDto;
+import com.redhat.devtools.stats.models.ExtensionInstall.Resolution;
+import com.redhat.devtools.stats.models.ExtensionInstall.StatsFilter;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@QuarkusTest
+public class ExtensionInstallBulkTest {
+
+    private static final int EXTENSIONS = 3;
+    private static final int DAYS = 60;
+
+    private InstallHistory history;
+    private List<Extension> extensions;
+
+    @BeforeEach
+    public void createHistory() {
+        history = InstallHistory.create("bulktest", EXTENSIONS, DAYS, Duration.ofDays(1), 20);
+        extensions = history.findExtensions();
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    @Test
+    public void testBulkStatsMatchSingleExtensionStats() {
+        for (Resolution resolution : Resolution.values()) {
+            List<ExtensionInstallDto> bulk = QuarkusTransaction.requiringNew().call(() -> {
+                try (Stream<ExtensionInstallDto> installs = ExtensionInstall.getFrom(extensions, resolution, StatsFilter.NONE)) {
+                    return installs.toList();
+                }
+            });
+            assertFalse(bulk.isEmpty());
+            List<InstallDto> expected = new ArrayList<>();
+            List<Long> expectedIds = new ArrayList<>();
+            extensions.stream().sorted((a, b) -> Long.compare(a.id, b.id)).forEach(extension ->
+                    QuarkusTransaction.requiringNew().run(() -> {
+                        try (Stream<InstallDto> installs = ExtensionInstall.getFrom(extension, resolution, StatsFilter.NONE)) {
+                            installs.forEach(install -> {
+                                expected.add(install);
+                                expectedIds.add(extension.id);
+                            });
+                        }
+                    }));
+            assertEquals(expected, bulk.stream().map(ExtensionInstallDto::install).toList(), resolution + " installs");
+            assertEquals(expectedIds, bulk.stream().map(ExtensionInstallDto::extensionId).toList(), resolution + " extensions");
+        }
+    }
+}
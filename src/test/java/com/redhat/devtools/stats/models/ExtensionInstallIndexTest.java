@@ -0,0 +1,105 @@
+package com.redhat.devtools.stats.models;
+
+import com.redhat.devtools.stats.models.ExtensionInstall.Resolution;
+import com.redhat.devtools.stats.models.ExtensionInstall.StatsFilter;
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+public class ExtensionInstallIndexTest {
+
+    private static final int EXTENSIONS = 60;
+    private static final int DAYS = 3 * 365;
+
+    @Inject
+    AgroalDataSource dataSource;
+
+    private InstallHistory history;
+    private Long extensionId;
+
+    @BeforeEach
+    public void createHistory() throws SQLException {
+        history = InstallHistory.create("indextest", EXTENSIONS, DAYS, Duration.ofDays(1), 30);
+        extensionId = history.findExtensions().get(0).id;
+        // Index-only scans need an up-to-date visibility map, and vacuum can't run in a transaction
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("vacuum analyze ExtensionInstall");
+        }
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    // As run by ExtensionInstall.getFromByVersion(), for /stats/{extensionId}
+    @Test
+    public void testStatsQueryUsesIndexOnlyScan() {
+        assertIndexOnlyScan(explain(Resolution.RAW, false, StatsFilter.NONE, ExtensionInstall.BY_VERSION));
+    }
+
+    // As run by ExtensionInstall.getFrom(), for {extensionId}.csv
+    @Test
+    public void testCsvQueryUsesIndexOnlyScan() {
+        assertIndexOnlyScan(explain(Resolution.RAW, false, StatsFilter.NONE, ExtensionInstall.BY_TIME));
+    }
+
+    // As run by ExtensionInstall.getFrom(), for {extensionId}.csv?from=...&to=...&version=...
+    @Test
+    public void testFilteredCsvQueryUsesIndexOnlyScan() {
+        Instant now = Instant.now();
+        StatsFilter filter = new StatsFilter(now.minus(Duration.ofDays(120)), now.minus(Duration.ofDays(90)), "1.3", null, null);
+        String plan = explain(Resolution.RAW, false, filter, ExtensionInstall.BY_TIME);
+        assertIndexOnlyScan(plan);
+        // The time range bounds the scan, rather than filtering the whole history
+        assertTrue(plan.contains("Index Cond: ((extension_id = ") && plan.contains("(\"time\" >= "), plan);
+    }
+
+    // As run by ExtensionInstall.getFromByVersion(), for /stats/{extensionId}?resolution=daily, until the rollups are backfilled
+    @Test
+    public void testDailyAggregationUsesIndexOnlyScan() {
+        assertIndexOnlyScan(explain(Resolution.DAILY, false, StatsFilter.NONE, ExtensionInstall.BY_VERSION));
+    }
+
+    // As run by ExtensionInstall.getFromByVersion(), for /stats/{extensionId}?resolution=daily, once the rollups are backfilled
+    @Test
+    public void testDailyRollupsQueryUsesPrimaryKey() throws SQLException {
+        List<Long> ids = history.findExtensions().stream().map(e -> e.id).toList();
+        QuarkusTransaction.requiringNew().run(() -> InstallRollup.rollup(ids, null));
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("vacuum analyze ExtensionInstallRollup");
+        }
+        String plan = explain(Resolution.DAILY, true, StatsFilter.NONE, ExtensionInstall.BY_VERSION);
+        assertTrue(plan.contains("using extensioninstallrollup_pkey") || plan.contains("on extensioninstallrollup_pkey"), plan);
+    }
+
+    private static void assertIndexOnlyScan(String plan) {
+        assertTrue(plan.contains("Index Only Scan using extensioninstall_extension_time_idx"), plan);
+    }
+
+    /**
+     * Explains the stats query built by {@link ExtensionInstall#statsQuery(Resolution, boolean, StatsFilter)},
+     * with the parameters bound as they are when it's run
+     */
+    @SuppressWarnings("unchecked")
+    private String explain(Resolution resolution, boolean fromRollups, StatsFilter filter, String orderBy) {
+        String query = "explain " + ExtensionInstall.statsQuery(resolution, fromRollups, filter) + " order by " + orderBy;
+        List<String> plan = QuarkusTransaction.requiringNew().call(() -> filter.bind(
+                Extension.getEntityManager().createNativeQuery(query), List.of(extensionId)).getResultList());
+        return String.join("\n", plan);
+    }
+}
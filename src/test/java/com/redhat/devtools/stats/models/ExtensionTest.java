@@ -0,0 +1,46 @@
+package com.redhat.devtools.stats.models;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+public class ExtensionTest {
+
+    private static final List<String> NAMES = List.of("extension_test.a", "extensionXtest.b", "extension%test.c",
+            "extension_test.d.e");
+
+    @BeforeEach
+    public void createExtensions() {
+        QuarkusTransaction.requiringNew().run(() -> NAMES.forEach(name -> {
+            Extension extension = new Extension();
+            extension.name = name;
+            extension.persist();
+        }));
+    }
+
+    @AfterEach
+    public void deleteExtensions() {
+        QuarkusTransaction.requiringNew().run(() -> Extension.delete("name in ?1", NAMES));
+    }
+
+    @Test
+    public void testPublisherWildcardsAreMatchedLiterally() {
+        assertEquals(List.of("extension_test.a", "extension_test.d.e"), findActiveByPublisher("extension_test"));
+        assertEquals(List.of("extensionXtest.b"), findActiveByPublisher("extensionXtest"));
+        assertEquals(List.of("extension%test.c"), findActiveByPublisher("extension%test"));
+        assertEquals(List.of(), findActiveByPublisher("extension"));
+    }
+
+    private static List<String> findActiveByPublisher(String publisher) {
+        return QuarkusTransaction.requiringNew().call(() -> Extension.findActiveByPublisher(publisher).stream()
+                .map(extension -> extension.name)
+                .toList());
+    }
+}
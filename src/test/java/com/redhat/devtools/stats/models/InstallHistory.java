@@ -0,0 +1,86 @@
+package com.redhat.devtools.stats.models;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.panache.common.Sort;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Install histories generated straight in the database, for tests and benchmarks: <code>extensions</code> extensions
+ * named <code>{publisher}.extension-{i}</code>, from 1, each with <code>snapshots</code> snapshots, one every
+ * <code>interval</code> until now. Installs grow by 1 per snapshot, and a new version is released every
+ * <code>snapshotsPerVersion</code> snapshots. The latest snapshots are recorded as the crawler does.
+ */
+public record InstallHistory(String publisher, int extensions, int snapshots, Duration interval, int snapshotsPerVersion) {
+
+    /**
+     * Inserts the history, in its own transaction
+     */
+    public static InstallHistory create(String publisher, int extensions, int snapshots, Duration interval, int snapshotsPerVersion) {
+        InstallHistory history = new InstallHistory(publisher, extensions, snapshots, interval, snapshotsPerVersion);
+        QuarkusTransaction.requiringNew().run(history::insert);
+        return history;
+    }
+
+    private void insert() {
+        var em = Extension.getEntityManager();
+        em.createNativeQuery("""
+                insert into Extension (id, active, displayName, name)
+                select nextval('Extension_SEQ'), true, :publisher || ' ' || i, :publisher || '.extension-' || i
+                from generate_series(1, :extensions) i
+                """)
+                .setParameter("publisher", publisher)
+                .setParameter("extensions", extensions)
+                .executeUpdate();
+        em.createNativeQuery("""
+                insert into ExtensionInstall (id, delta, installs, onpremDownloads, time, total_installs, updates, version, extension_id)
+                select nextval('ExtensionInstall_SEQ'), 1, :snapshots - n, 0, now() - make_interval(secs => n * :seconds),
+                    :snapshots - n, 0, '1.' || (n / :snapshotsPerVersion), e.id
+                from Extension e, generate_series(1, :snapshots) n
+                where e.name like :names
+                """)
+                .setParameter("snapshots", snapshots)
+                .setParameter("seconds", interval.toSeconds())
+                .setParameter("snapshotsPerVersion", snapshotsPerVersion)
+                .setParameter("names", publisher + ".%")
+                .executeUpdate();
+        em.createNativeQuery("""
+                insert into LatestInstall (extension_id, installs, total_installs, version, time)
+                select distinct on (extension_id) extension_id, installs, total_installs, version, time
+                from ExtensionInstall
+                where extension_id in (select id from Extension where name like :names)
+                order by extension_id, time desc
+                """)
+                .setParameter("names", publisher + ".%")
+                .executeUpdate();
+    }
+
+    /**
+     * @return the name of the i-th extension, from 1
+     */
+    public String name(int i) {
+        return publisher + ".extension-" + i;
+    }
+
+    /**
+     * @return the extensions, ordered as they were added
+     */
+    public List<Extension> findExtensions() {
+        return QuarkusTransaction.requiringNew().call(() -> Extension.<Extension>list("name like ?1", Sort.ascending("id"), publisher + ".%"));
+    }
+
+    /**
+     * Updates the planner statistics, so queries are planned as they would be on a long-lived database
+     */
+    public static void analyze() {
+        QuarkusTransaction.requiringNew().run(() -> Extension.getEntityManager().createNativeQuery("analyze").executeUpdate());
+    }
+
+    /**
+     * Deletes the extensions, along with their history
+     */
+    public void delete() {
+        QuarkusTransaction.requiringNew().run(() -> Extension.delete("name like ?1", publisher + ".%"));
+    }
+}
@@ -0,0 +1,93 @@
+package com.redhat.devtools.stats.models;
+
+import com.redhat.devtools.stats.models.ExtensionInstall.Resolution;
+import com.redhat.devtools.stats.models.ExtensionInstall.StatsFilter;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@QuarkusTest
+public class InstallRollupTest {
+
+    private static final int DAYS = 400;
+
+    private InstallHistory history;
+    private Long extensionId;
+
+    @BeforeEach
+    public void createHistory() {
+        // 2 snapshots a day, a new version every 45 days
+        history = InstallHistory.create("rolluptest", 1, 2 * DAYS, Duration.ofHours(12), 90);
+        extensionId = history.findExtensions().get(0).id;
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    @Test
+    public void testRollupsMatchRawAggregation() {
+        QuarkusTransaction.requiringNew().run(() -> InstallRollup.rollup(List.of(extensionId), null));
+        assertRollupsMatchRawAggregation();
+
+        // A crawl only recomputes the current periods
+        QuarkusTransaction.requiringNew().run(() -> {
+            Extension.getEntityManager().createNativeQuery("""
+                    insert into ExtensionInstall (id, delta, installs, onpremDownloads, time, total_installs, updates, version, extension_id)
+                    values (nextval('ExtensionInstall_SEQ'), 5, 1000, 0, now(), 1000, 0, '2.0', :extension)
+                    """)
+                    .setParameter("extension", extensionId)
+                    .executeUpdate();
+            InstallRollup.rollup(List.of(extensionId), Instant.now());
+        });
+        assertRollupsMatchRawAggregation();
+    }
+
+    @Test
+    public void testResolutionFollowsTheRequestedSpan() {
+        Extension extension = QuarkusTransaction.requiringNew().call(() -> Extension.findById(extensionId));
+        Instant now = Instant.now();
+        assertEquals(Resolution.RAW, getResolution(extension, new StatsFilter(now.minus(Duration.ofDays(30)), null, null, null, null), 2000));
+        assertEquals(Resolution.DAILY, getResolution(extension, StatsFilter.NONE, 2000));
+        assertEquals(Resolution.WEEKLY, getResolution(extension, StatsFilter.NONE, 100));
+        assertEquals(Resolution.MONTHLY, getResolution(extension, StatsFilter.NONE, 20));
+        assertEquals(Resolution.DAILY, getResolution(extension,
+                new StatsFilter(now.minus(Duration.ofDays(DAYS)), now.minus(Duration.ofDays(DAYS - 60)), null, null, null), 100));
+    }
+
+    private static Resolution getResolution(Extension extension, StatsFilter filter, int maxPoints) {
+        return QuarkusTransaction.requiringNew().call(() -> ExtensionInstall.getResolution(extension, filter, maxPoints));
+    }
+
+    private void assertRollupsMatchRawAggregation() {
+        for (Resolution resolution : Resolution.values()) {
+            if (resolution == Resolution.RAW) {
+                continue;
+            }
+            List<?> raw = query(ExtensionInstall.statsQuery(resolution, false));
+            List<?> rollups = query(ExtensionInstall.statsQuery(resolution, true));
+            assertFalse(raw.isEmpty());
+            assertEquals(raw.size(), rollups.size(), resolution + " rollups");
+            for (int i = 0; i < raw.size(); i++) {
+                assertEquals(List.of((Object[]) raw.get(i)), List.of((Object[]) rollups.get(i)), resolution + " rollup " + i);
+            }
+        }
+    }
+
+    private List<?> query(String statsQuery) {
+        return QuarkusTransaction.requiringNew().call(() -> Extension.getEntityManager()
+                .createNativeQuery(statsQuery + " order by version, time")
+                .setParameter("extensions", List.of(extensionId))
+                .getResultList());
+    }
+}
@@ -0,0 +1,71 @@
+package com.redhat.devtools.stats.models;
+
+import com.redhat.devtools.stats.models.Extension.ExtensionDto;
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the index page query reading the whole install history with the one reading {@link LatestInstall}.
+ * Run with <code>./mvnw test -Pbenchmark</code>
+ */
+@QuarkusTest
+@Tag("benchmark")
+public class PopularityQueryBenchmark {
+
+    private static final int EXTENSIONS = 50;
+    private static final int HOURS = 2 * 365 * 24;
+    private static final int RUNS = 20;
+
+    private static final String HISTORY_QUERY = """
+            select e, installs FROM Extension e
+            LEFT JOIN LATERAL (
+                SELECT ei.extension.id AS extId, max(ei.time) as latest, max(ei.installs) as installs
+                FROM ExtensionInstall ei
+                GROUP BY extId
+            ) as popular ON e.id = extId
+            where e.active = true
+            order by installs DESC
+        """;
+
+    private InstallHistory history;
+
+    @BeforeEach
+    public void createHistory() {
+        history = InstallHistory.create("benchmark", EXTENSIONS, HOURS, Duration.ofHours(1), 720);
+        InstallHistory.analyze();
+    }
+
+    @AfterEach
+    public void deleteHistory() {
+        history.delete();
+    }
+
+    @Test
+    public void comparePopularityQueries() {
+        List<ExtensionDto> fromHistory = measure("history", () -> Extension.find(HISTORY_QUERY).project(ExtensionDto.class).list());
+        List<ExtensionDto> fromLatest = measure("latest installs", Extension::findActiveSortedByPopularity);
+        assertEquals(fromHistory.size(), fromLatest.size());
+    }
+
+    private List<ExtensionDto> measure(String name, Supplier<List<ExtensionDto>> query) {
+        List<ExtensionDto> result = QuarkusTransaction.requiringNew().call(query::get);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            QuarkusTransaction.requiringNew().call(query::get);
+        }
+        Log.infov("Popularity from {0}: {1} ms per query over {2} snapshots", name,
+                (System.nanoTime() - start) / RUNS / 1_000_000.0, EXTENSIONS * HOURS);
+        return result;
+    }
+}
@@ -0,0 +1,100 @@
+package com.redhat.devtools.stats.services;
+
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.ResourceArg;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.path.json.JsonPath;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.HttpHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.redhat.devtools.stats.services.GalleryStub.delayMs;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@QuarkusTest
+@QuarkusTestResource(value = GalleryStub.class, restrictToAnnotatedClass = true, initArgs = {
+        @ResourceArg(name = "watched.publishers", value = GalleryStub.PUBLISHER),
+        // Crawls only run when triggered by the tests
+        @ResourceArg(name = "marketplace-api.crawl.cron", value = "off"),
+        @ResourceArg(name = "rollup.backfill.every", value = "off")})
+public class CrawlTriggerTest {
+
+    @Inject
+    MarketPlaceStatisticsWatcher watcher;
+
+    @BeforeEach
+    public void waitForStartupCrawl() {
+        // Whether it stored anything doesn't matter here
+        watcher.getInitialCrawl().exceptionally(error -> null).join();
+        delayMs = 500;
+    }
+
+    @AfterEach
+    public void resetGallery() {
+        delayMs = 0;
+    }
+
+    @Test
+    public void testTriggersCoalesceIntoTheCrawlInFlight() {
+        CrawlRun run = watcher.trigger("first");
+        CrawlRun coalesced = watcher.trigger("second");
+
+        assertSame(run, coalesced);
+        assertEquals("first", coalesced.getStatus().trigger());
+        run.getCompletion().join();
+
+        CrawlRun next = watcher.trigger("third");
+        assertNotEquals(run.getId(), next.getId());
+        assertEquals("third", next.getStatus().trigger());
+        next.getCompletion().join();
+    }
+
+    @Test
+    public void testRefreshIsAccepted() {
+        JsonPath accepted = given().when().get("/refresh")
+                .then()
+                .statusCode(202)
+                .body("trigger", is("refresh"))
+                .extract().jsonPath();
+        long id = accepted.getLong("id");
+
+        // Answered before the crawl is over, which a refresh in the meantime joins
+        given().when().get("/refresh")
+                .then()
+                .statusCode(202)
+                .header(HttpHeaders.LOCATION, endsWith("/crawls/" + id))
+                .body("id", is((int) id));
+        watcher.getRun(id).getCompletion().join();
+    }
+
+    @Test
+    public void testCrawlStatusIsTracked() {
+        CrawlRun run = watcher.trigger("test");
+        given().when().get("/crawls/" + run.getId())
+                .then()
+                .statusCode(200)
+                .body("id", is((int) run.getId()))
+                .body("trigger", is("test"));
+        run.getCompletion().join();
+
+        given().when().get("/crawls/" + run.getId())
+                .then()
+                .statusCode(200)
+                .body("state", is("COMPLETED"))
+                .body("publishers." + GalleryStub.PUBLISHER + ".state", is("COMPLETED"));
+    }
+
+    @Test
+    public void testUnknownCrawlsAreNotFound() {
+        given().when().get("/crawls/0")
+                .then()
+                .statusCode(404);
+    }
+}
@@ -0,0 +1,79 @@
+package com.redhat.devtools.stats.services;
+
+import com.redhat.devtools.stats.models.Extension;
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.ResourceArg;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.redhat.devtools.stats.services.GalleryStub.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@QuarkusTest
+@QuarkusTestResource(value = GalleryStub.class, restrictToAnnotatedClass = true, initArgs = {
+        @ResourceArg(name = "watched.publishers", value = GalleryStub.PUBLISHER),
+        // Crawls only run when triggered by the tests
+        @ResourceArg(name = "marketplace-api.crawl.cron", value = "off"),
+        @ResourceArg(name = "rollup.backfill.every", value = "off")})
+public class ExtensionDeactivationTest {
+
+    @Inject
+    MarketPlaceStatisticsWatcher watcher;
+
+    @Inject
+    @CacheName("marketplace-api")
+    Cache cache;
+
+    @BeforeEach
+    public void waitForStartupCrawl() {
+        // Whether it stored anything doesn't matter here, as long as the extensions were added
+        watcher.getInitialCrawl().exceptionally(error -> null).join();
+    }
+
+    @AfterEach
+    public void resetGallery() {
+        vanished = 0;
+        truncated = false;
+        // Crawls don't reactivate extensions
+        QuarkusTransaction.requiringNew().run(() -> Extension.update("active = true where name like ?1", PUBLISHER + ".%"));
+    }
+
+    @Test
+    public void testVanishedExtensionsAreDeactivated() {
+        vanished = 2;
+        crawl();
+
+        List<Extension> active = findActive();
+        assertEquals(EXTENSIONS - 2, active.size());
+        assertFalse(active.stream().anyMatch(e -> e.name.equals(PUBLISHER + ".extension-" + (EXTENSIONS - 1))));
+        assertFalse(active.stream().anyMatch(e -> e.name.equals(PUBLISHER + ".extension-" + (EXTENSIONS - 2))));
+    }
+
+    @Test
+    public void testIncompleteListingsDontDeactivate() {
+        // Only the first page comes back, though the listing counts all extensions
+        truncated = true;
+        CrawlRun run = crawl();
+
+        assertEquals(CrawlRun.State.COMPLETED, run.getStatus().state());
+        assertEquals(EXTENSIONS, findActive().size());
+    }
+
+    private CrawlRun crawl() {
+        cache.invalidateAll().await().indefinitely();
+        return watcher.trigger("test").getCompletion().join();
+    }
+
+    private static List<Extension> findActive() {
+        return QuarkusTransaction.requiringNew().call(() -> Extension.findActiveByPublisher(PUBLISHER));
+    }
+}
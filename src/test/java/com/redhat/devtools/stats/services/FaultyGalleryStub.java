@@ -0,0 +1,93 @@
+package com.redhat.devtools.stats.services;
+
+import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for a misbehaving gallery extensionquery API. Each publisher serves {@link #EXTENSIONS} extensions, after:
+ * <ul>
+ *     <li>{@link #FLAKY}: 503 to the first 2 requests</li>
+ *     <li>{@link #THROTTLED}: 429 with a 1 second Retry-After to the first request</li>
+ *     <li>{@link #SLOW}: answering the first request after {@link #SLOW_DELAY_MS}</li>
+ *     <li>{@link #OUTAGE}: 503 while {@link #outage} is set</li>
+ * </ul>
+ * Client timeouts, retry delays and circuit breaker thresholds are shortened to match.
+ */
+public class FaultyGalleryStub implements QuarkusTestResourceLifecycleManager {
+
+    public static final String FLAKY = "flaky";
+    public static final String THROTTLED = "throttled";
+    public static final String SLOW = "slow";
+    public static final String OUTAGE = "outage";
+    public static final int EXTENSIONS = 3;
+    public static final int SLOW_DELAY_MS = 1500;
+
+    public static volatile boolean outage;
+    private static final Map<String, AtomicInteger> REQUESTS = new ConcurrentHashMap<>();
+
+    private Vertx vertx;
+
+    public static int requests(String publisher) {
+        return REQUESTS.computeIfAbsent(publisher, p -> new AtomicInteger()).get();
+    }
+
+    @Override
+    public Map<String, String> start() {
+        vertx = Vertx.vertx();
+        HttpServer server = vertx.createHttpServer()
+                .requestHandler(request -> request.body().onSuccess(body -> {
+                    JsonObject filter = body.toJsonObject().getJsonArray("filters").getJsonObject(0);
+                    String publisher = filter.getJsonArray("criteria").stream()
+                            .map(c -> (JsonObject) c)
+                            .filter(c -> c.getInteger("filterType") == 18)
+                            .map(c -> c.getString("value"))
+                            .findFirst().orElse(null);
+                    int attempt = REQUESTS.computeIfAbsent(publisher, p -> new AtomicInteger()).incrementAndGet();
+                    HttpServerResponse response = request.response();
+                    String page = GalleryStub.page(publisher, EXTENSIONS, filter.getInteger("pageSize"),
+                            filter.getInteger("pageNumber")).encode();
+                    if (FLAKY.equals(publisher) && attempt <= 2 || OUTAGE.equals(publisher) && outage) {
+                        response.setStatusCode(503).end();
+                    } else if (THROTTLED.equals(publisher) && attempt == 1) {
+                        response.setStatusCode(429).putHeader("Retry-After", "1").end();
+                    } else if (SLOW.equals(publisher) && attempt == 1) {
+                        vertx.setTimer(SLOW_DELAY_MS, id -> ok(response, page));
+                    } else {
+                        ok(response, page);
+                    }
+                }))
+                .listen(0)
+                .toCompletionStage().toCompletableFuture().join();
+        String client = MarketPlaceRestClient.class.getName() + "/getPublisherData";
+        return Map.of("quarkus.rest-client.marketplace-api.url", "http://localhost:" + server.actualPort(),
+                "quarkus.rest-client.marketplace-api.read-timeout", "500",
+                "marketplace-api.max-requests-per-second", "1000",
+                client + "/Retry/delay", "50",
+                client + "/Retry/delayUnit", "MILLIS",
+                client + "/Retry/jitter", "0",
+                client + "/CircuitBreaker/requestVolumeThreshold", "4",
+                client + "/CircuitBreaker/failureRatio", "1.0",
+                client + "/CircuitBreaker/delay", "1000",
+                client + "/CircuitBreaker/delayUnit", "MILLIS");
+    }
+
+    private static void ok(HttpServerResponse response, String page) {
+        if (!response.closed()) {
+            response.putHeader("Content-Type", "application/json").end(page);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (vertx != null) {
+            vertx.close().toCompletionStage().toCompletableFuture().join();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.redhat.devtools.stats.services;
+
+import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stands in for the gallery extensionquery API, serving {@link #EXTENSIONS} extensions for {@link #PUBLISHER},
+ * paged as requested, and none for other publishers.
+ * From {@link #revision} 1 on, the first {@link #CHANGED} extensions are renamed and their install counts move.
+ * The last {@link #vanished} extensions aren't listed anymore. With {@link #truncated}, pages past the first are empty,
+ * while the listing still counts all extensions.
+ * Pages are answered after {@link #delayMs}, if set, to keep crawls in flight.
+ * Requests for {@link #BROKEN} are always rejected with a 400, which isn't retried.
+ * Init args are added to the configuration, e.g. to watch {@link #PUBLISHER}.
+ */
+public class GalleryStub implements QuarkusTestResourceLifecycleManager {
+
+    public static final String PUBLISHER = "paged";
+    public static final String BROKEN = "broken";
+    public static final int EXTENSIONS = 250;
+    public static final int PAGE_SIZE = 100;
+    public static final int CHANGED = 10;
+
+    public static volatile int revision;
+    public static volatile long delayMs;
+    public static volatile int vanished;
+    public static volatile boolean truncated;
+
+    private final Map<String, String> config = new HashMap<>();
+    private Vertx vertx;
+
+    @Override
+    public void init(Map<String, String> initArgs) {
+        config.putAll(initArgs);
+    }
+
+    @Override
+    public Map<String, String> start() {
+        vertx = Vertx.vertx();
+        HttpServer server = vertx.createHttpServer()
+                .requestHandler(request -> request.body().onSuccess(body -> {
+                    JsonObject filter = body.toJsonObject().getJsonArray("filters").getJsonObject(0);
+                    String publisher = filter.getJsonArray("criteria").stream()
+                            .map(c -> (JsonObject) c)
+                            .filter(c -> c.getInteger("filterType") == 18)
+                            .map(c -> c.getString("value"))
+                            .findFirst().orElse(null);
+                    if (BROKEN.equals(publisher)) {
+                        request.response().setStatusCode(400).end();
+                        return;
+                    }
+                    String page = page(publisher, filter.getInteger("pageSize"), filter.getInteger("pageNumber")).encode();
+                    if (delayMs > 0) {
+                        vertx.setTimer(delayMs, id -> ok(request.response(), page));
+                    } else {
+                        ok(request.response(), page);
+                    }
+                }))
+                .listen(0)
+                .toCompletionStage().toCompletableFuture().join();
+        config.put("quarkus.rest-client.marketplace-api.url", "http://localhost:" + server.actualPort());
+        config.put("marketplace-api.page-size", String.valueOf(PAGE_SIZE));
+        return config;
+    }
+
+    private static void ok(HttpServerResponse response, String page) {
+        response.putHeader("Content-Type", "application/json").end(page);
+    }
+
+    @Override
+    public void stop() {
+        if (vertx != null) {
+            vertx.close().toCompletionStage().toCompletableFuture().join();
+        }
+    }
+
+    private static JsonObject page(String publisher, int pageSize, int pageNumber) {
+        if (!PUBLISHER.equals(publisher)) {
+            return page(publisher, 0, 0, pageSize, pageNumber, revision);
+        }
+        int total = EXTENSIONS - vanished;
+        return page(publisher, total, truncated && pageNumber > 1 ? 0 : total, pageSize, pageNumber, revision);
+    }
+
+    static JsonObject page(String publisher, int total, int pageSize, int pageNumber) {
+        return page(publisher, total, total, pageSize, pageNumber, 0);
+    }
+
+    /**
+     * @param total the number of extensions counted by the listing
+     * @param listed the number of extensions actually listed, across pages
+     */
+    private static JsonObject page(String publisher, int total, int listed, int pageSize, int pageNumber, int revision) {
+        JsonArray extensions = new JsonArray();
+        for (int i = (pageNumber - 1) * pageSize; i < Math.min(listed, pageNumber * pageSize); i++) {
+            int moved = i < CHANGED ? revision : 0;
+            extensions.add(new JsonObject()
+                    .put("extensionName", "extension-" + i)
+                    .put("displayName", "Extension " + i + (moved > 0 ? " r" + moved : ""))
+                    .put("publisher", new JsonObject().put("publisherName", publisher))
+                    .put("versions", new JsonArray().add(new JsonObject()
+                            .put("version", "1.0." + i)
+                            .put("files", new JsonArray().add(new JsonObject()
+                                    .put("assetType", "Microsoft.VisualStudio.Services.Icons.Default")
+                                    .put("source", "https://example.com/extension-" + i + ".png")))
+                            .put("properties", new JsonArray().add(new JsonObject()
+                                    .put("key", "Microsoft.VisualStudio.Code.Engine").put("value", "^1.75.0")))))
+                    .put("statistics", new JsonArray()
+                            .add(new JsonObject().put("statisticName", "install").put("value", i + moved))
+                            .add(new JsonObject().put("statisticName", "averagerating").put("value", 4.5))));
+        }
+        JsonObject count = new JsonObject().put("metadataType", "ResultCount")
+                .put("metadataItems", new JsonArray().add(new JsonObject().put("name", "TotalCount").put("count", total)));
+        JsonObject result = new JsonObject().put("extensions", extensions).put("resultMetadata", new JsonArray().add(count));
+        return new JsonObject().put("results", new JsonArray().add(result));
+    }
+}
@@ -0,0 +1,91 @@
+package com.redhat.devtools.stats.services;
+
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.redhat.devtools.stats.services.FaultyGalleryStub.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@QuarkusTestResource(value = FaultyGalleryStub.class, restrictToAnnotatedClass = true)
+public class MarketPlaceResilienceTest {
+
+    @Inject
+    MarketPlaceService service;
+
+    @Inject
+    MarketPlaceStatisticsWatcher watcher;
+
+    @Inject
+    @CacheName("marketplace-api")
+    Cache cache;
+
+    @BeforeEach
+    public void setUp() {
+        // The startup crawl would otherwise interleave its requests with the failures tripping the circuit
+        watcher.getInitialCrawl().exceptionally(error -> null).join();
+        invalidateCache();
+    }
+
+    private void invalidateCache() {
+        cache.invalidateAll().await().indefinitely();
+    }
+
+    @Test
+    public void testUnavailableResponsesAreRetried() {
+        assertEquals(EXTENSIONS, service.getPublisherData(FLAKY).extensions().size());
+        assertEquals(3, requests(FLAKY));
+    }
+
+    @Test
+    public void testRetryAfterIsHonored() {
+        long start = System.currentTimeMillis();
+        assertEquals(EXTENSIONS, service.getPublisherData(THROTTLED).extensions().size());
+        assertEquals(2, requests(THROTTLED));
+        assertTrue(System.currentTimeMillis() - start >= 1000, "The retry should wait for Retry-After");
+    }
+
+    @Test
+    public void testTimeoutsAreRetried() {
+        long start = System.currentTimeMillis();
+        assertEquals(EXTENSIONS, service.getPublisherData(SLOW).extensions().size());
+        assertEquals(2, requests(SLOW));
+        assertTrue(System.currentTimeMillis() - start < SLOW_DELAY_MS, "The slow response should time out");
+    }
+
+    @Test
+    public void testLastSnapshotIsServedDuringOutage() throws InterruptedException {
+        outage = false;
+        MarketPlacePublisher publisher = service.getPublisherData(OUTAGE);
+        assertEquals(EXTENSIONS, publisher.extensions().size());
+        int requests = requests(OUTAGE);
+
+        outage = true;
+        try {
+            invalidateCache();
+            assertSame(publisher, service.getPublisherData(OUTAGE));
+            // The first attempt and 3 retries failed, which opens the circuit
+            assertEquals(requests + 4, requests(OUTAGE));
+
+            invalidateCache();
+            assertSame(publisher, service.getPublisherData(OUTAGE));
+            assertEquals(requests + 4, requests(OUTAGE), "The open circuit should fail fast");
+            assertThrows(RuntimeException.class, () -> service.getPublisherData("never-fetched"),
+                    "There's no snapshot to fall back to");
+        } finally {
+            outage = false;
+        }
+
+        // Past the circuit breaker delay, a successful attempt closes the circuit again
+        Thread.sleep(1100);
+        invalidateCache();
+        MarketPlacePublisher recovered = service.getPublisherData(OUTAGE);
+        assertNotSame(publisher, recovered);
+        assertEquals(requests + 5, requests(OUTAGE));
+    }
+}
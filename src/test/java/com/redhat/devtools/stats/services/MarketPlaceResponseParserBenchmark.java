@@ -0,0 +1,163 @@
+package com.redhat.devtools.stats.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding a 200-extension gallery response into a Vert.x JsonObject tree, as the rest client used to,
+ * with {@link MarketPlaceResponseParser}. The response mimics the shape of the gallery's: several versions per extension,
+ * each with its files and properties, plus categories, tags and statistics.
+ * <p>
+ * Run with <code>./mvnw test -Pjmh -Djmh.benchmarks=MarketPlaceResponseParserBenchmark</code>, or {@link #main(String[])} from the test classpath.
+ * Allocations are reported as <code>gc.alloc.rate.norm</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MarketPlaceResponseParserBenchmark {
+
+    private static final int EXTENSIONS = 200;
+
+    private final JsonFactory factory = new JsonFactory();
+    private final StatisticsExtractor statisticsExtractor = new StatisticsExtractor(List.of());
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        response = createResponse(EXTENSIONS).toBuffer().getBytes();
+    }
+
+    @Benchmark
+    public void jsonObjectTree(Blackhole blackhole) {
+        JsonObject publisher = new JsonObject(Buffer.buffer(response));
+        JsonArray extensions = publisher.getJsonArray("results").getJsonObject(0).getJsonArray("extensions").copy();
+        for (int i = 0; i < extensions.size(); i++) {
+            JsonObject extension = extensions.getJsonObject(i);
+            JsonObject version = extension.getJsonArray("versions").getJsonObject(0);
+            JsonArray files = version.getJsonArray("files");
+            blackhole.consume(extension.getJsonObject("publisher").getString("publisherName"));
+            blackhole.consume(extension.getString("extensionName"));
+            blackhole.consume(extension.getString("displayName"));
+            blackhole.consume(files.isEmpty() ? null : files.getJsonObject(0).getString("source"));
+            blackhole.consume(version.getString("version", "unknown"));
+            JsonArray statistics = extension.getJsonArray("statistics");
+            blackhole.consume(getStatAsInt(statistics, "install"));
+            blackhole.consume(getStatAsInt(statistics, "updateCount"));
+            blackhole.consume(getStatAsInt(statistics, "onpremDownloads"));
+        }
+    }
+
+    @Benchmark
+    public void streamingParser(Blackhole blackhole) throws IOException {
+        MarketPlacePublisher publisher = MarketPlaceResponseParser.parse(factory, new ByteArrayInputStream(response), statisticsExtractor);
+        for (MarketPlaceExtension extension : publisher.extensions()) {
+            blackhole.consume(extension.publisherName());
+            blackhole.consume(extension.extensionName());
+            blackhole.consume(extension.displayName());
+            blackhole.consume(extension.icon());
+            blackhole.consume(extension.version());
+            blackhole.consume(extension.statistics().install());
+            blackhole.consume(extension.statistics().updateCount());
+            blackhole.consume(extension.statistics().onpremDownloads());
+        }
+    }
+
+    // The former JsonUtils.getStatAsInt
+    private static int getStatAsInt(JsonArray statistics, String name) {
+        Optional<JsonObject> statistic = statistics.stream().map(o -> (JsonObject) o)
+                .filter(stat -> name.equals(stat.getString("statisticName")))
+                .findFirst();
+        return statistic.map(stat -> stat.getInteger("value")).orElse(0);
+    }
+
+    static JsonObject createResponse(int count) {
+        Instant now = Instant.now();
+        JsonArray extensions = new JsonArray();
+        for (int i = 0; i < count; i++) {
+            JsonArray versions = new JsonArray();
+            for (int v = 10; v > 0; v--) {
+                String version = "1." + i + "." + v;
+                JsonArray files = new JsonArray();
+                for (String asset : new String[]{"Icons.Default", "Content.Details", "Content.Changelog", "Code.Manifest", "Content.License"}) {
+                    files.add(new JsonObject()
+                            .put("assetType", "Microsoft.VisualStudio.Services." + asset)
+                            .put("source", "https://redhat.gallerycdn.vsassets.io/extensions/redhat/extension-" + i + "/" + version + "/" + asset));
+                }
+                JsonArray properties = new JsonArray();
+                for (String key : new String[]{"Code.ExtensionDependencies", "Code.ExtensionPack", "Code.ExtensionKind", "Code.LocalizedLanguages",
+                        "Services.Links.Source", "Services.Links.Getstarted", "Services.Links.Support", "Services.Links.Learn",
+                        "Services.Branding.Color", "Services.Branding.Theme", "Services.GitHubFlavoredMarkdown", "Code.Engine"}) {
+                    properties.add(new JsonObject().put("key", "Microsoft.VisualStudio." + key).put("value", "value of " + key));
+                }
+                versions.add(new JsonObject()
+                        .put("version", version)
+                        .put("flags", "validated")
+                        .put("lastUpdated", now.minus(v, ChronoUnit.DAYS).toString())
+                        .put("files", files)
+                        .put("properties", properties)
+                        .put("assetUri", "https://redhat.gallerycdn.vsassets.io/extensions/redhat/extension-" + i + "/" + version)
+                        .put("fallbackAssetUri", "https://redhat.gallery.vsassets.io/_apis/public/gallery/publisher/redhat/extension/extension-" + i + "/" + version + "/assetbyname"));
+            }
+            JsonArray statistics = new JsonArray();
+            String[] names = {"install", "updateCount", "onpremDownloads", "averagerating", "ratingcount", "weightedRating", "trendingdaily", "trendingweekly", "trendingmonthly"};
+            for (int s = 0; s < names.length; s++) {
+                statistics.add(new JsonObject().put("statisticName", names[s]).put("value", s < 3 ? (i + 1) * 1000.0 * (s + 1) : 4.5 + s / 10.0));
+            }
+            extensions.add(new JsonObject()
+                    .put("publisher", new JsonObject()
+                            .put("publisherId", "0000-" + i)
+                            .put("publisherName", "redhat")
+                            .put("displayName", "Red Hat")
+                            .put("flags", "verified")
+                            .put("domain", "https://redhat.com")
+                            .put("isDomainVerified", true))
+                    .put("extensionId", "ffff-" + i)
+                    .put("extensionName", "extension-" + i)
+                    .put("displayName", "Extension " + i)
+                    .put("flags", "validated, public")
+                    .put("lastUpdated", now.toString())
+                    .put("publishedDate", now.minus(1000, ChronoUnit.DAYS).toString())
+                    .put("releaseDate", now.minus(1000, ChronoUnit.DAYS).toString())
+                    .put("shortDescription", "A longer description of extension " + i + ", as found in the marketplace listing")
+                    .put("versions", versions)
+                    .put("categories", new JsonArray().add("Programming Languages").add("Linters").add("Debuggers"))
+                    .put("tags", new JsonArray().add("java").add("maven").add("gradle").add("__web_extension").add("keybindings"))
+                    .put("statistics", statistics)
+                    .put("installationTargets", new JsonArray()
+                            .add(new JsonObject().put("target", "Microsoft.VisualStudio.Code").put("targetVersion", "")))
+                    .put("deploymentType", 0));
+        }
+        JsonObject resultCount = new JsonObject().put("metadataType", "ResultCount")
+                .put("metadataItems", new JsonArray().add(new JsonObject().put("name", "TotalCount").put("count", count)));
+        JsonObject result = new JsonObject().put("extensions", extensions)
+                .put("pagingToken", null)
+                .put("resultMetadata", new JsonArray().add(resultCount));
+        return new JsonObject().put("results", new JsonArray().add(result));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MarketPlaceResponseParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,51 @@
+package com.redhat.devtools.stats.services;
+
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@QuarkusTestResource(value = GalleryStub.class, restrictToAnnotatedClass = true)
+public class MarketPlaceServiceTest {
+
+    @Inject
+    MarketPlaceService service;
+
+    @Test
+    public void testPublisherDataSpansAllPages() {
+        MarketPlacePublisher publisher = service.getPublisherData(GalleryStub.PUBLISHER);
+        assertEquals(GalleryStub.EXTENSIONS, publisher.totalCount());
+        assertEquals(GalleryStub.EXTENSIONS, publisher.extensions().size());
+
+        Set<String> names = new HashSet<>();
+        publisher.extensions().forEach(e -> names.add(e.extensionName()));
+        assertEquals(GalleryStub.EXTENSIONS, names.size());
+
+        assertSame(publisher, service.getPublisherData(GalleryStub.PUBLISHER), "Merged pages should be cached");
+    }
+
+    @Test
+    public void testExtensionData() {
+        int last = GalleryStub.EXTENSIONS - 1;
+        MarketPlaceExtension extension = service.getExtensionData(GalleryStub.PUBLISHER + ".extension-" + last);
+        assertNotNull(extension);
+        assertEquals(GalleryStub.PUBLISHER, extension.publisherName());
+        assertEquals("Extension " + last, extension.displayName());
+        assertEquals("https://example.com/extension-" + last + ".png", extension.icon());
+        assertEquals("1.0." + last, extension.version());
+        assertEquals(last, extension.statistics().install());
+        assertEquals(0, extension.statistics().updateCount());
+        assertEquals(4.5, extension.statistics().extras().get("averagerating"));
+    }
+
+    @Test
+    public void testUnknownPublisherIsEmpty() {
+        assertTrue(service.getPublisherData("unknown").extensions().isEmpty());
+    }
+}
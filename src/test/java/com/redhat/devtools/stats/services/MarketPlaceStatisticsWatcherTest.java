@@ -0,0 +1,79 @@
+package com.redhat.devtools.stats.services;
+
+import com.redhat.devtools.stats.models.Extension;
+import com.redhat.devtools.stats.models.LatestInstall;
+import com.redhat.devtools.stats.utils.JsonUtils;
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.ResourceArg;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static com.redhat.devtools.stats.services.GalleryStub.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+@QuarkusTestResource(value = GalleryStub.class, restrictToAnnotatedClass = true, initArgs = {
+        @ResourceArg(name = "watched.publishers", value = GalleryStub.PUBLISHER),
+        // Nothing but the crawl under test may run statements while they're counted
+        @ResourceArg(name = "marketplace-api.crawl.cron", value = "off"),
+        @ResourceArg(name = "rollup.backfill.every", value = "off")})
+public class MarketPlaceStatisticsWatcherTest {
+
+    @Inject
+    MarketPlaceStatisticsWatcher watcher;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Inject
+    @CacheName("marketplace-api")
+    Cache cache;
+
+    @AfterEach
+    public void resetGallery() {
+        revision = 0;
+    }
+
+    @Test
+    public void testCrawlStatementsDontGrowWithExtensions() {
+        // The startup crawl added the publisher's extensions, and their first snapshots
+        watcher.getInitialCrawl().join();
+        List<Extension> activeExtensions = QuarkusTransaction.requiringNew().call(Extension::findActive);
+        Set<String> otherPublishers = new HashSet<>();
+        activeExtensions.forEach(e -> otherPublishers.add(JsonUtils.getPublisherName(e.name)));
+        otherPublishers.remove(PUBLISHER);
+
+        revision = 1;
+        cache.invalidateAll().await().indefinitely();
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        CrawlRun run = watcher.trigger("test").getCompletion().join();
+
+        assertEquals(CHANGED, run.getStatus().changed());
+        assertEquals(EXTENSIONS - CHANGED, run.getStatus().skipped());
+        // 1 lookup of the existing extensions, then for the gallery stub's publisher:
+        // - the renamed extensions (findByIds), then their updates, as 1 batch
+        // - its active extensions, and their latest install summaries (LatestInstall.findByExtensions)
+        // - the last installs of the changed extensions
+        // - 1 ExtensionInstall_SEQ round-trip, as the startup crawl's snapshots used up the pooled ids it fetched,
+        //   then the new snapshots and the updated summaries, as 1 batch each
+        // - the daily, weekly and monthly rollup upserts
+        // and the active extensions of each other publisher, which the stub has no data for
+        long statements = statistics.getPrepareStatementCount();
+        assertEquals(1 + 11 + otherPublishers.size(), statements,
+                "Crawl issued " + statements + " statements for " + activeExtensions.size() + " extensions");
+
+        LatestInstall latest = QuarkusTransaction.requiringNew().call(() -> LatestInstall.findById(
+                Extension.findByName(PUBLISHER + ".extension-0").id));
+        assertEquals(1, latest.installs);
+    }
+}
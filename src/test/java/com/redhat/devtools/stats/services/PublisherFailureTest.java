@@ -0,0 +1,75 @@
+package com.redhat.devtools.stats.services;
+
+import com.redhat.devtools.stats.models.Extension;
+import com.redhat.devtools.stats.models.LatestInstall;
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.ResourceArg;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import static com.redhat.devtools.stats.services.GalleryStub.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@QuarkusTestResource(value = GalleryStub.class, restrictToAnnotatedClass = true, initArgs = {
+        @ResourceArg(name = "watched.publishers", value = GalleryStub.PUBLISHER + "," + GalleryStub.BROKEN),
+        // Crawls only run when triggered by the tests
+        @ResourceArg(name = "marketplace-api.crawl.cron", value = "off"),
+        @ResourceArg(name = "rollup.backfill.every", value = "off")})
+public class PublisherFailureTest {
+
+    // Not used by the other tests, so the changed extensions differ from whatever they stored
+    private static final int REVISION = 3;
+
+    @Inject
+    MarketPlaceStatisticsWatcher watcher;
+
+    @Inject
+    @CacheName("marketplace-api")
+    Cache cache;
+
+    @AfterEach
+    public void resetGallery() {
+        revision = 0;
+    }
+
+    @Test
+    public void testStartupCrawlReportsFailedPublishers() {
+        CompletionException error = assertThrows(CompletionException.class, () -> watcher.getInitialCrawl().join());
+        assertTrue(error.getCause().getMessage().contains(BROKEN), error.getCause().getMessage());
+
+        // The other publisher was committed all the same
+        assertEquals(EXTENSIONS, QuarkusTransaction.requiringNew().call(
+                () -> Extension.findActiveByPublisher(PUBLISHER)).size());
+    }
+
+    @Test
+    public void testFailingPublisherDoesntRollBackTheOthers() {
+        watcher.getInitialCrawl().exceptionally(error -> null).join();
+
+        revision = REVISION;
+        cache.invalidateAll().await().indefinitely();
+        CrawlRun run = watcher.trigger("test").getCompletion().join();
+
+        CrawlRun.Status status = run.getStatus();
+        assertEquals(CrawlRun.State.COMPLETED, status.state());
+        assertEquals(Set.of(BROKEN), run.getFailedPublishers());
+        assertEquals(CrawlRun.State.FAILED, status.publishers().get(BROKEN).state());
+        assertNotNull(status.publishers().get(BROKEN).error());
+        assertEquals(CrawlRun.State.COMPLETED, status.publishers().get(PUBLISHER).state());
+        assertEquals(CHANGED, status.publishers().get(PUBLISHER).changed());
+
+        Extension extension = QuarkusTransaction.requiringNew().call(() -> Extension.findByName(PUBLISHER + ".extension-0"));
+        assertEquals("Extension 0 r" + REVISION, extension.displayName);
+        LatestInstall latest = QuarkusTransaction.requiringNew().call(() -> LatestInstall.findById(extension.id));
+        assertEquals(REVISION, latest.installs);
+    }
+}
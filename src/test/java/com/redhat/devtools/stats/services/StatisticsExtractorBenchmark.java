@@ -0,0 +1,80 @@
+package com.redhat.devtools.stats.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the tracked statistics of an extension with one stream per statistic over a Vert.x JsonArray,
+ * as the crawler used to, with a single {@link StatisticsExtractor} pass over the same statistics array.
+ * <p>
+ * Run with <code>./mvnw test -Pjmh -Djmh.benchmarks=StatisticsExtractorBenchmark</code>, or {@link #main(String[])} from the test classpath.
+ * Allocations are reported as <code>gc.alloc.rate.norm</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsExtractorBenchmark {
+
+    private final JsonFactory factory = new JsonFactory();
+    private final StatisticsExtractor statisticsExtractor = new StatisticsExtractor(List.of("averagerating", "ratingcount", "trendingdaily"));
+    private byte[] statistics;
+
+    @Setup
+    public void setup() {
+        JsonObject extension = MarketPlaceResponseParserBenchmark.createResponse(1)
+                .getJsonArray("results").getJsonObject(0)
+                .getJsonArray("extensions").getJsonObject(0);
+        statistics = extension.getJsonArray("statistics").toBuffer().getBytes();
+    }
+
+    @Benchmark
+    public void perNameStreams(Blackhole blackhole) {
+        JsonArray array = new JsonArray(Buffer.buffer(statistics));
+        blackhole.consume(getStatAsInt(array, "install"));
+        blackhole.consume(getStatAsInt(array, "updateCount"));
+        blackhole.consume(getStatAsInt(array, "onpremDownloads"));
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) throws IOException {
+        try (JsonParser parser = factory.createParser(statistics)) {
+            parser.nextToken();
+            ExtensionStatistics extracted = statisticsExtractor.extract(parser);
+            blackhole.consume(extracted.install());
+            blackhole.consume(extracted.updateCount());
+            blackhole.consume(extracted.onpremDownloads());
+        }
+    }
+
+    // The former JsonUtils.getStatAsInt
+    private static int getStatAsInt(JsonArray statistics, String name) {
+        Optional<JsonObject> statistic = statistics.stream().map(o -> (JsonObject) o)
+                .filter(stat -> name.equals(stat.getString("statisticName")))
+                .findFirst();
+        return statistic.map(stat -> stat.getInteger("value")).orElse(0);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StatisticsExtractorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}